@@ -0,0 +1,124 @@
+package com.ensias.essudatingapp;
+
+import com.google.firebase.database.DataSnapshot;
+
+/**
+ * Compact, fully deserialized record of a discovery card: the fields shown on the home
+ * screen plus the profile bio and hobbies. Gender and course are interned to int codes
+ * on construction, see ProfileCodes.
+ */
+public class Candidate {
+
+    private final String id;
+    private final String firstName;
+    private final String lastName;
+    private final int age;
+    private final String gender;
+    private final String interestedIn;
+    private final String course;
+    private final String profileImage;
+    private final String bio;
+    private final String hobbies;
+    private final long hobbyVector;
+    private final int genderCode;
+    private final int interestedInCode;
+    private final int courseCode;
+
+    public Candidate(String id, String firstName, String lastName, int age, String gender, String interestedIn,
+                     String course, String profileImage, String bio, String hobbies, long hobbyVector) {
+        this.id = id;
+        this.firstName = firstName;
+        this.lastName = lastName;
+        this.age = age;
+        this.gender = gender;
+        this.interestedIn = interestedIn;
+        this.course = course;
+        this.profileImage = profileImage;
+        this.bio = bio;
+        this.hobbies = hobbies;
+        this.hobbyVector = hobbyVector;
+        this.genderCode = ProfileCodes.genderCode(gender);
+        this.interestedInCode = ProfileCodes.genderPreferenceCode(interestedIn);
+        this.courseCode = ProfileCodes.courseCode(course);
+    }
+
+    // Builds a candidate from a discovery/{gender}/{course}/{uid} entry
+    public static Candidate fromIndexEntry(DataSnapshot snapshot, HobbyVector hobbyVectors) {
+        Integer age = snapshot.child("age").getValue(Integer.class);
+        String hobbies = snapshot.child("hobbies").getValue(String.class);
+        return new Candidate(
+                snapshot.getKey(),
+                snapshot.child("firstName").getValue(String.class),
+                snapshot.child("lastName").getValue(String.class),
+                age != null ? age : 0,
+                snapshot.child("gender").getValue(String.class),
+                snapshot.child("interestedIn").getValue(String.class),
+                snapshot.child("course").getValue(String.class),
+                snapshot.child("profileImage").getValue(String.class),
+                snapshot.child("bio").getValue(String.class),
+                hobbies,
+                hobbyVectors.encode(hobbies)
+        );
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getFirstName() {
+        return firstName;
+    }
+
+    public String getLastName() {
+        return lastName;
+    }
+
+    public int getAge() {
+        return age;
+    }
+
+    public String getGender() {
+        return gender;
+    }
+
+    public String getInterestedIn() {
+        return interestedIn;
+    }
+
+    public String getCourse() {
+        return course;
+    }
+
+    public String getProfileImage() {
+        return profileImage;
+    }
+
+    public String getBio() {
+        return bio;
+    }
+
+    public String getHobbies() {
+        return hobbies;
+    }
+
+    // Bitset over R.array.hobbies_array, see HobbyVector
+    public long getHobbyVector() {
+        return hobbyVector;
+    }
+
+    public int getGenderCode() {
+        return genderCode;
+    }
+
+    public int getInterestedInCode() {
+        return interestedInCode;
+    }
+
+    public int getCourseCode() {
+        return courseCode;
+    }
+
+    public boolean hasProfileImage() {
+        return profileImage != null && !profileImage.isEmpty();
+    }
+}
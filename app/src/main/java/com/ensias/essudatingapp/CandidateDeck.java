@@ -0,0 +1,181 @@
+package com.ensias.essudatingapp;
+
+import android.content.Context;
+import android.graphics.drawable.Drawable;
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.RequestBuilder;
+import com.bumptech.glide.request.target.Target;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Look-ahead deck for the home screen.
+ *
+ * Candidates arrive fully built from the discovery index, so the deck only has to keep
+ * the profile images of the next few cards decoded in Glide's memory cache. A swipe then
+ * renders from memory, and the look-ahead window is refilled as the deck drains.
+ *
+ * Every page is merged into the cards not yet dealt and the lot is reranked, see
+ * CandidateRanker, so the best hobby overlap comes first across pages and not only within
+ * the page the index happened to return it in. Cards already dealt never move.
+ */
+public class CandidateDeck {
+
+    public static final int DEFAULT_LOOK_AHEAD = 5;
+
+    private final Context context;
+    private final int lookAhead;
+    private final CandidateRanker ranker = new CandidateRanker();
+    private long hobbyPreference;
+
+    private final List<Candidate> candidates = new ArrayList<>();
+    private final Set<String> candidateIds = new HashSet<>();
+    private int nextIndex;
+    private int swipedCount;
+    private int warmedUpTo = -1;
+
+    private int imageWidth = Target.SIZE_ORIGINAL;
+    private int imageHeight = Target.SIZE_ORIGINAL;
+
+    public CandidateDeck(Context context) {
+        this(context, DEFAULT_LOOK_AHEAD);
+    }
+
+    public CandidateDeck(Context context, int lookAhead) {
+        this.context = context;
+        this.lookAhead = lookAhead;
+    }
+
+    public int getLookAhead() {
+        return lookAhead;
+    }
+
+    // Reranks the undealt cards from the next append on; 0 keeps the order they arrive in
+    public void setHobbyPreference(long hobbyPreference) {
+        this.hobbyPreference = hobbyPreference;
+    }
+
+    // Fewer undealt cards than the ranker picks from, time to fetch another page
+    public boolean needsMore() {
+        return remaining() < Math.max(lookAhead, ranker.getTopK());
+    }
+
+    // Preloads must use the same size as the card image view to land in the memory cache
+    public void setImageSize(int width, int height) {
+        if (width > 0 && height > 0) {
+            imageWidth = width;
+            imageHeight = height;
+        }
+    }
+
+    public void clear() {
+        candidates.clear();
+        candidateIds.clear();
+        nextIndex = 0;
+        swipedCount = 0;
+        warmedUpTo = -1;
+    }
+
+    // Skips anyone already in the deck, e.g. a new sign-up that later shows up in a page too
+    public void append(List<Candidate> page) {
+        List<Candidate> undealt = candidates.subList(nextIndex, candidates.size());
+        int before = undealt.size();
+        for (Candidate candidate : page) {
+            if (candidateIds.add(candidate.getId())) {
+                undealt.add(candidate);
+            }
+        }
+        if (undealt.size() == before) {
+            return;
+        }
+
+        // The look-ahead window may have changed, warming again is a memory cache hit for the rest
+        List<Candidate> ranked = ranker.rank(new ArrayList<>(undealt), hobbyPreference);
+        undealt.clear();
+        undealt.addAll(ranked);
+        warmedUpTo = Math.min(warmedUpTo, nextIndex - 1);
+        refill();
+    }
+
+    public void append(Candidate candidate) {
+        append(Collections.singletonList(candidate));
+    }
+
+    // Swaps in a newer copy of a card not yet dealt, e.g. a sign-up that has since added a
+    // bio and hobbies, and reranks it. Cards already dealt are left as they were shown.
+    public void update(Candidate candidate) {
+        if (remove(candidate.getId())) {
+            append(candidate);
+        }
+    }
+
+    // Takes a card out of the deck if it has not been dealt yet
+    public boolean remove(String userId) {
+        for (int i = nextIndex; i < candidates.size(); i++) {
+            if (candidates.get(i).getId().equals(userId)) {
+                candidateIds.remove(candidates.remove(i).getId());
+                warmedUpTo = Math.min(warmedUpTo, nextIndex - 1);
+                refill();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Drops cards that were swiped elsewhere since the deck was built
+    public void removeSeen(InteractionRepository interactions) {
+        for (int i = candidates.size() - 1; i >= nextIndex; i--) {
+            if (interactions.hasInteracted(candidates.get(i).getId())) {
+                candidateIds.remove(candidates.remove(i).getId());
+            }
+        }
+        warmedUpTo = Math.min(warmedUpTo, nextIndex - 1);
+        refill();
+    }
+
+    // The card on screen plus everything behind it, what DeckStore saves
+    public List<Candidate> unswiped() {
+        return new ArrayList<>(candidates.subList(swipedCount, candidates.size()));
+    }
+
+    // Cards not yet handed out
+    public int remaining() {
+        return candidates.size() - nextIndex;
+    }
+
+    // Returns the next card, or null once the deck is empty. Every card handed out before
+    // this call counts as swiped.
+    public Candidate next() {
+        swipedCount = nextIndex;
+        if (nextIndex >= candidates.size()) {
+            return null;
+        }
+
+        Candidate candidate = candidates.get(nextIndex++);
+        refill();
+        return candidate;
+    }
+
+    // Shared by the card and the preloads so both resolve to the same cache key
+    public static RequestBuilder<Drawable> imageRequest(Context context, String url) {
+        return Glide.with(context)
+                .load(url)
+                .centerCrop()
+                .placeholder(R.drawable.default_profile);
+    }
+
+    private void refill() {
+        int end = Math.min(candidates.size() - 1, nextIndex - 1 + lookAhead);
+        for (int i = Math.max(warmedUpTo + 1, nextIndex); i <= end; i++) {
+            Candidate candidate = candidates.get(i);
+            if (candidate.hasProfileImage()) {
+                imageRequest(context, candidate.getProfileImage()).preload(imageWidth, imageHeight);
+            }
+            warmedUpTo = i;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.ensias.essudatingapp;
+
+import androidx.annotation.NonNull;
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
+import com.google.firebase.database.DatabaseReference;
+import com.google.firebase.database.Query;
+import com.google.firebase.database.ValueEventListener;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streams a discovery slice one page at a time.
+ *
+ * The index is ordered by age, so the cursor is the (age, key) of the last entry of a
+ * page and the next page starts right after it. The cursor is saved with the deck by
+ * DeckStore so the next session resumes where this one stopped.
+ */
+public class CandidatePager {
+
+    public static final int DEFAULT_PAGE_SIZE = 50;
+
+    public static class Cursor {
+        final int age;
+        final String key;
+
+        Cursor(int age, String key) {
+            this.age = age;
+            this.key = key;
+        }
+    }
+
+    public interface OnPageListener {
+        void onPage(List<DataSnapshot> entries);
+        void onError(DatabaseError error);
+    }
+
+    private final DatabaseReference mDatabase;
+    private final PreferenceFilter filter;
+    private final int pageSize;
+
+    private Cursor cursor;
+    private boolean resumed;
+    private boolean exhausted;
+    private boolean loading;
+
+    public CandidatePager(DatabaseReference mDatabase, PreferenceFilter filter, Cursor startCursor) {
+        this.mDatabase = mDatabase;
+        this.filter = filter;
+        this.pageSize = DEFAULT_PAGE_SIZE;
+        this.cursor = startCursor;
+        this.resumed = startCursor != null;
+    }
+
+    // Where the next page starts, null before the first page
+    public Cursor getCursor() {
+        return cursor;
+    }
+
+    public boolean isExhausted() {
+        return exhausted;
+    }
+
+    public boolean isLoading() {
+        return loading;
+    }
+
+    public void loadNextPage(OnPageListener listener) {
+        if (loading || exhausted) {
+            return;
+        }
+        loading = true;
+
+        Query query = DiscoveryIndex.candidatesQuery(mDatabase, filter.getGenderPreference(), filter.getCoursePreference(),
+                filter.getMinAge(), filter.getMaxAge(), cursor == null ? null : cursor.age, cursor == null ? null : cursor.key)
+                .limitToFirst(pageSize);
+
+        query.addListenerForSingleValueEvent(new ValueEventListener() {
+            @Override
+            public void onDataChange(@NonNull DataSnapshot snapshot) {
+                loading = false;
+
+                List<DataSnapshot> entries = new ArrayList<>(pageSize);
+                for (DataSnapshot entrySnapshot : snapshot.getChildren()) {
+                    entries.add(entrySnapshot);
+                }
+
+                if (!entries.isEmpty()) {
+                    DataSnapshot last = entries.get(entries.size() - 1);
+                    Integer age = last.child("age").getValue(Integer.class);
+                    cursor = new Cursor(age != null ? age : filter.getMinAge(), last.getKey());
+                }
+
+                if (entries.size() < pageSize) {
+                    if (resumed) {
+                        // Reached the end after resuming mid-slice, wrap around once to pick up
+                        // anyone who joined before the saved cursor
+                        resumed = false;
+                        cursor = null;
+                    } else {
+                        exhausted = true;
+                    }
+                }
+
+                listener.onPage(entries);
+            }
+
+            @Override
+            public void onCancelled(@NonNull DatabaseError error) {
+                loading = false;
+                listener.onError(error);
+            }
+        });
+    }
+}
@@ -0,0 +1,80 @@
+package com.ensias.essudatingapp;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Ranks discovery candidates by hobby overlap with the current user's preference.
+ *
+ * The best K are selected with a bounded min-heap, so ranking is O(n log K) and never
+ * sorts the whole input. They come first, best first; everyone else follows in the order
+ * they were queried in, so no candidate is dropped. Ties keep query order.
+ *
+ * CandidateDeck reranks the cards not yet dealt each time a page arrives, so the top K
+ * are picked across pages rather than within one.
+ */
+public class CandidateRanker {
+
+    public static final int DEFAULT_TOP_K = CandidatePager.DEFAULT_PAGE_SIZE;
+
+    private final int topK;
+
+    public CandidateRanker() {
+        this(DEFAULT_TOP_K);
+    }
+
+    public CandidateRanker(int topK) {
+        this.topK = topK;
+    }
+
+    public int getTopK() {
+        return topK;
+    }
+
+    // Candidates carry their hobby vector from parsing, so scoring is a single popcount
+    public List<Candidate> rank(List<Candidate> candidates, long preference) {
+
+        // Weakest kept candidate on top: lowest score, then the latest in query order
+        PriorityQueue<Scored> heap = new PriorityQueue<>(topK + 1, (a, b) ->
+                a.score != b.score ? Integer.compare(a.score, b.score) : Integer.compare(b.order, a.order));
+        boolean[] selected = new boolean[candidates.size()];
+
+        for (int i = 0; i < candidates.size(); i++) {
+            int score = HobbyVector.overlap(preference, candidates.get(i).getHobbyVector());
+
+            if (heap.size() < topK) {
+                heap.add(new Scored(score, i));
+                selected[i] = true;
+            } else if (!heap.isEmpty() && score > heap.peek().score) {
+                selected[heap.poll().order] = false;
+                heap.add(new Scored(score, i));
+                selected[i] = true;
+            }
+        }
+
+        List<Candidate> ranked = new ArrayList<>(candidates.size());
+        while (!heap.isEmpty()) {
+            ranked.add(candidates.get(heap.poll().order));
+        }
+        Collections.reverse(ranked);
+
+        for (int i = 0; i < candidates.size(); i++) {
+            if (!selected[i]) {
+                ranked.add(candidates.get(i));
+            }
+        }
+        return ranked;
+    }
+
+    private static class Scored {
+        final int score;
+        final int order;
+
+        Scored(int score, int order) {
+            this.score = score;
+            this.order = order;
+        }
+    }
+}
@@ -6,30 +6,56 @@ import android.widget.EditText;
 import android.widget.ImageButton;
 import android.widget.Toast;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.appcompat.widget.Toolbar;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.database.ChildEventListener;
 import com.google.firebase.database.DataSnapshot;
 import com.google.firebase.database.DatabaseError;
 import com.google.firebase.database.DatabaseReference;
 import com.google.firebase.database.FirebaseDatabase;
+import com.google.firebase.database.Query;
 import com.google.firebase.database.ValueEventListener;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 public class ChatActivity extends AppCompatActivity {
 
+    static final int PAGE_SIZE = 30;
+
+    // Rows from the top at which the next older page is requested
+    private static final int LOAD_OLDER_THRESHOLD = 5;
+
     private RecyclerView messagesRecyclerView;
     private EditText messageEditText;
     private ImageButton sendButton;
 
     private MessageAdapter messageAdapter;
-    private List<Message> messages;
+    private MessageStore messageStore;
+    private Outbox outbox;
+    private Outbox.Listener outboxListener;
+    private LinearLayoutManager layoutManager;
+    private boolean hasOlderMessages;
+    private boolean loadingOlder;
+    private final List<Query> messagesQueries = new ArrayList<>();
+    private ChildEventListener messagesListener;
+    private ValueEventListener deliveredListener;
+    private ValueEventListener editedAtListener;
+
+    // Newest message the other user has received, and the newest this device reported receiving
+    private String otherDeliveredUpTo;
+    private String ownDeliveredUpTo;
+
+    // Stored rows painted on open; re-read only when matches/{id}/editedAt moves past syncedEditedAt
+    private List<Message> storedWindow;
+    private long syncedEditedAt;
 
     private FirebaseAuth mAuth;
     private DatabaseReference mDatabase;
@@ -70,12 +96,25 @@ public class ChatActivity extends AppCompatActivity {
         messageEditText = findViewById(R.id.message_edit_text);
         sendButton = findViewById(R.id.send_button);
 
+        messageStore = MessageStore.getInstance(this);
+        outbox = Outbox.getInstance(this, currentUserId);
+
         // Setup RecyclerView
-        messages = new ArrayList<>();
-        messageAdapter = new MessageAdapter(this, messages, currentUserId);
-        messagesRecyclerView.setLayoutManager(new LinearLayoutManager(this));
+        messageAdapter = new MessageAdapter(this, currentUserId);
+        layoutManager = new LinearLayoutManager(this);
+        messagesRecyclerView.setLayoutManager(layoutManager);
         messagesRecyclerView.setAdapter(messageAdapter);
 
+        // Older history is fetched as the user scrolls up towards it
+        messagesRecyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+                if (dy < 0 && layoutManager.findFirstVisibleItemPosition() <= LOAD_OLDER_THRESHOLD) {
+                    loadOlderMessages();
+                }
+            }
+        });
+
         // Setup send button
         sendButton.setOnClickListener(new View.OnClickListener() {
             @Override
@@ -84,38 +123,330 @@ public class ChatActivity extends AppCompatActivity {
             }
         });
 
+        // Ticks on outgoing messages as the Outbox gets them acknowledged
+        outboxListener = (sentMatchId, messageId, status) -> {
+            if (matchId.equals(sentMatchId)) {
+                if (status == Message.STATUS_SENT && isDeliveredByCursor(currentUserId, messageId)) {
+                    // Reached the other device before the acknowledgement reached this one
+                    status = Message.STATUS_DELIVERED;
+                    messageStore.setStatus(matchId, messageId, status);
+                }
+                messageAdapter.setStatus(messageId, status);
+                if (status == Message.STATUS_FAILED) {
+                    Toast.makeText(ChatActivity.this, "Message could not be sent", Toast.LENGTH_SHORT).show();
+                }
+            }
+        };
+        outbox.addListener(outboxListener);
+
         // Load messages
         loadMessages();
     }
 
+    // Paints the stored history first, then fetches only what is newer than it. Stored rows
+    // change only through delivery and edits, each tracked by a single value, so reopening a
+    // chat downloads the new messages plus two small values.
     private void loadMessages() {
-        mDatabase.child("matches").child(matchId).child("messages")
-                .addValueEventListener(new ValueEventListener() {
+        messageStore.loadLatest(matchId, PAGE_SIZE, cached -> {
+            listenForDelivery();
+            if (cached.isEmpty()) {
+                listenForEdits(null, 0L);
+                loadLatestFromNetwork();
+                return;
+            }
+
+            hasOlderMessages = true; // stored or on the server, found out on scroll
+            messageAdapter.prepend(cached);
+            messagesRecyclerView.scrollToPosition(messageAdapter.getItemCount() - 1);
+
+            listenForMessages(messagesRef().orderByKey().startAfter(cached.get(cached.size() - 1).getId()));
+            messageStore.loadEditedAt(matchId, editedAt -> listenForEdits(cached, editedAt));
+        });
+    }
+
+    // The other user's delivery cursor, matches/{id}/deliveredUpTo/{them}: every message sent
+    // from here up to that push key has reached their device
+    private void listenForDelivery() {
+        deliveredListener = new ValueEventListener() {
+            @Override
+            public void onDataChange(@NonNull DataSnapshot dataSnapshot) {
+                String pushKey = dataSnapshot.getValue(String.class);
+                if (pushKey == null) return;
+
+                otherDeliveredUpTo = pushKey;
+                messageStore.markDeliveredUpTo(matchId, currentUserId, pushKey);
+                messageAdapter.setDeliveredUpTo(pushKey);
+            }
+
+            @Override
+            public void onCancelled(@NonNull DatabaseError databaseError) {}
+        };
+        deliveredUpToRef(otherUserId).addValueEventListener(deliveredListener);
+    }
+
+    // Whatever edits or deletes a message also sets matches/{id}/editedAt to the server time.
+    // Stored rows are re-read only when it is newer than the value recorded with them; with
+    // nothing stored, the current value is just recorded.
+    private void listenForEdits(List<Message> stored, long storedEditedAt) {
+        storedWindow = stored;
+        syncedEditedAt = storedEditedAt;
+        editedAtListener = new ValueEventListener() {
+            @Override
+            public void onDataChange(@NonNull DataSnapshot dataSnapshot) {
+                Long editedAt = dataSnapshot.getValue(Long.class);
+                if (editedAt == null || editedAt <= syncedEditedAt) return;
+
+                syncedEditedAt = editedAt;
+                if (storedWindow != null) {
+                    resyncStored(storedWindow, editedAt);
+                } else {
+                    messageStore.setEditedAt(matchId, editedAt);
+                }
+            }
+
+            @Override
+            public void onCancelled(@NonNull DatabaseError databaseError) {}
+        };
+        editedAtRef().addValueEventListener(editedAtListener);
+    }
+
+    // Re-reads the stored rows painted on open, patching edits and dropping deleted ones; the
+    // marker is recorded only once they are applied
+    private void resyncStored(List<Message> stored, long editedAt) {
+        messagesRef().orderByKey().startAt(stored.get(0).getId()).endAt(stored.get(stored.size() - 1).getId())
+                .addListenerForSingleValueEvent(new ValueEventListener() {
                     @Override
                     public void onDataChange(@NonNull DataSnapshot dataSnapshot) {
-                        messages.clear();
+                        Map<String, Integer> storedStatus = new HashMap<>();
+                        for (Message message : stored) {
+                            storedStatus.put(message.getId(), message.getStatus());
+                        }
 
                         for (DataSnapshot messageSnapshot : dataSnapshot.getChildren()) {
-                            Message message = messageSnapshot.getValue(Message.class);
-                            messages.add(message);
+                            Message message = toMessage(messageSnapshot);
+                            if (message != null) {
+                                // Delivery state only moves forward, as in the adapter
+                                Integer status = storedStatus.get(message.getId());
+                                if (status != null && status > message.getStatus()) {
+                                    message.setStatus(status);
+                                }
+                                messageStore.save(matchId, message);
+                                messageAdapter.update(message);
+                            }
+                        }
+                        for (Message message : stored) {
+                            // Unsent messages only exist here
+                            if (!dataSnapshot.hasChild(message.getId()) && !outbox.isPending(message.getId())
+                                    && message.getStatus() != Message.STATUS_FAILED) {
+                                messageStore.delete(matchId, message.getId());
+                                messageAdapter.remove(message.getId());
+                            }
                         }
+                        messageStore.setEditedAt(matchId, editedAt);
+                    }
 
-                        messageAdapter.notifyDataSetChanged();
+                    @Override
+                    public void onCancelled(@NonNull DatabaseError databaseError) {}
+                });
+    }
+
+    // Nothing stored yet: opens on the last page only, then follows new messages from there
+    private void loadLatestFromNetwork() {
+        messagesRef().orderByKey().limitToLast(PAGE_SIZE)
+                .addListenerForSingleValueEvent(new ValueEventListener() {
+                    @Override
+                    public void onDataChange(@NonNull DataSnapshot dataSnapshot) {
+                        List<Message> page = toPage(dataSnapshot);
+                        hasOlderMessages = dataSnapshot.getChildrenCount() == PAGE_SIZE;
+                        messageStore.saveAll(matchId, page);
+                        messageAdapter.prepend(page);
+                        reportDelivered(page);
 
                         // Scroll to bottom
-                        if (messages.size() > 0) {
-                            messagesRecyclerView.smoothScrollToPosition(messages.size() - 1);
+                        if (messageAdapter.getItemCount() > 0) {
+                            messagesRecyclerView.scrollToPosition(messageAdapter.getItemCount() - 1);
                         }
+
+                        // The page is already here, so only what comes after it is listened to
+                        String newestKey = null;
+                        for (DataSnapshot messageSnapshot : dataSnapshot.getChildren()) {
+                            newestKey = messageSnapshot.getKey();
+                        }
+                        listenForMessages(newestKey != null
+                                ? messagesRef().orderByKey().startAfter(newestKey)
+                                : messagesRef());
+                    }
+
+                    @Override
+                    public void onCancelled(@NonNull DatabaseError databaseError) {
+                        Toast.makeText(ChatActivity.this, "Failed to load messages: " + databaseError.getMessage(),
+                                Toast.LENGTH_SHORT).show();
+                    }
+                });
+    }
+
+    // Fetches the page before the oldest message shown, from the store while it has one,
+    // then from the server
+    private void loadOlderMessages() {
+        String oldestId = messageAdapter.getOldestId();
+        if (loadingOlder || !hasOlderMessages || oldestId == null) {
+            return;
+        }
+        loadingOlder = true;
+
+        messageStore.loadBefore(matchId, oldestId, PAGE_SIZE, stored -> {
+            if (!stored.isEmpty()) {
+                loadingOlder = false;
+                prependOlder(stored);
+            } else {
+                loadOlderFromNetwork(oldestId);
+            }
+        });
+    }
+
+    private void loadOlderFromNetwork(String oldestId) {
+        messagesRef().orderByKey().endBefore(oldestId).limitToLast(PAGE_SIZE)
+                .addListenerForSingleValueEvent(new ValueEventListener() {
+                    @Override
+                    public void onDataChange(@NonNull DataSnapshot dataSnapshot) {
+                        loadingOlder = false;
+                        List<Message> page = toPage(dataSnapshot);
+                        hasOlderMessages = dataSnapshot.getChildrenCount() == PAGE_SIZE;
+                        messageStore.saveAll(matchId, page);
+                        prependOlder(page);
                     }
 
                     @Override
                     public void onCancelled(@NonNull DatabaseError databaseError) {
+                        loadingOlder = false;
                         Toast.makeText(ChatActivity.this, "Failed to load messages: " + databaseError.getMessage(),
                                 Toast.LENGTH_SHORT).show();
                     }
                 });
     }
 
+    // Remember the first visible row and its offset, then restore them below the new rows
+    private void prependOlder(List<Message> page) {
+        int anchor = layoutManager.findFirstVisibleItemPosition();
+        View anchorView = layoutManager.findViewByPosition(anchor);
+        int offset = anchorView != null ? anchorView.getTop() : 0;
+
+        messageAdapter.prepend(page);
+        if (anchor != RecyclerView.NO_POSITION) {
+            layoutManager.scrollToPositionWithOffset(anchor + page.size(), offset);
+        }
+    }
+
+    // Applies each message event on its own, so an incoming message costs the same in any conversation.
+    // Callers start it right after the newest message already loaded, so nothing is downloaded twice.
+    // One listener serves every query.
+    private void listenForMessages(Query query) {
+        if (messagesListener == null) {
+            messagesListener = createMessagesListener();
+        }
+        messagesQueries.add(query);
+        query.addChildEventListener(messagesListener);
+    }
+
+    private ChildEventListener createMessagesListener() {
+        return new ChildEventListener() {
+            @Override
+            public void onChildAdded(@NonNull DataSnapshot snapshot, @Nullable String previousChildName) {
+                Message message = toMessage(snapshot);
+                if (message == null) return;
+
+                messageStore.save(matchId, message);
+                messageAdapter.append(message);
+                reportDelivered(Collections.singletonList(message));
+
+                // Scroll to bottom
+                messagesRecyclerView.scrollToPosition(messageAdapter.getItemCount() - 1);
+            }
+
+            @Override
+            public void onChildChanged(@NonNull DataSnapshot snapshot, @Nullable String previousChildName) {
+                Message message = toMessage(snapshot);
+                if (message != null) {
+                    messageStore.save(matchId, message);
+                    messageAdapter.update(message);
+                }
+            }
+
+            @Override
+            public void onChildRemoved(@NonNull DataSnapshot snapshot) {
+                messageStore.delete(matchId, snapshot.getKey());
+                messageAdapter.remove(snapshot.getKey());
+            }
+
+            @Override
+            public void onChildMoved(@NonNull DataSnapshot snapshot, @Nullable String previousChildName) {}
+
+            @Override
+            public void onCancelled(@NonNull DatabaseError databaseError) {
+                Toast.makeText(ChatActivity.this, "Failed to load messages: " + databaseError.getMessage(),
+                        Toast.LENGTH_SHORT).show();
+            }
+        };
+    }
+
+    // Tells the sender everything up to the newest of these messages has reached this device:
+    // one value per chat instead of a flag per message. Only moves forward, so older pages
+    // loaded on scroll never report.
+    private void reportDelivered(List<Message> messages) {
+        String newestKey = null;
+        for (Message message : messages) {
+            if (currentUserId.equals(message.getReceiverId())) {
+                newestKey = message.getId();
+            }
+        }
+        if (newestKey != null && (ownDeliveredUpTo == null || newestKey.compareTo(ownDeliveredUpTo) > 0)) {
+            ownDeliveredUpTo = newestKey;
+            deliveredUpToRef(currentUserId).setValue(newestKey);
+        }
+    }
+
+    private boolean isDeliveredByCursor(String senderId, String messageId) {
+        return currentUserId.equals(senderId) && otherDeliveredUpTo != null
+                && messageId.compareTo(otherDeliveredUpTo) <= 0;
+    }
+
+    private DatabaseReference messagesRef() {
+        return mDatabase.child("matches").child(matchId).child("messages");
+    }
+
+    private DatabaseReference deliveredUpToRef(String userId) {
+        return mDatabase.child("matches").child(matchId).child("deliveredUpTo").child(userId);
+    }
+
+    private DatabaseReference editedAtRef() {
+        return mDatabase.child("matches").child(matchId).child("editedAt");
+    }
+
+    private List<Message> toPage(DataSnapshot dataSnapshot) {
+        List<Message> page = new ArrayList<>(PAGE_SIZE);
+        for (DataSnapshot messageSnapshot : dataSnapshot.getChildren()) {
+            Message message = toMessage(messageSnapshot);
+            if (message != null) {
+                page.add(message);
+            }
+        }
+        return page;
+    }
+
+    private Message toMessage(DataSnapshot snapshot) {
+        Message message = snapshot.getValue(Message.class);
+        if (message == null || message.getTimestamp() == null) {
+            return null;
+        }
+        message.setId(snapshot.getKey());
+        if (message.isDelivered() || isDeliveredByCursor(message.getSenderId(), message.getId())) {
+            message.setStatus(Message.STATUS_DELIVERED);
+        } else if (outbox.isPending(message.getId())) {
+            message.setStatus(Message.STATUS_PENDING);
+        }
+        return message;
+    }
+
     private void sendMessage() {
         String messageText = messageEditText.getText().toString().trim();
 
@@ -123,28 +454,32 @@ public class ChatActivity extends AppCompatActivity {
             return;
         }
 
-        // Create message
-        Message message = new Message(
-                currentUserId,
-                otherUserId,
-                messageText,
-                System.currentTimeMillis()
-        );
-
-        // Add message to database
-        String messageId = mDatabase.child("matches").child(matchId).child("messages").push().getKey();
-        mDatabase.child("matches").child(matchId).child("messages").child(messageId).setValue(message);
-
-        // Update match with last message
-        Map<String, Object> matchUpdates = new HashMap<>();
-        matchUpdates.put("lastMessage", messageText);
-        matchUpdates.put("lastMessageTimestamp", message.getTimestamp());
-        mDatabase.child("matches").child(matchId).updateChildren(matchUpdates);
+        // Shown at once; the Outbox writes it, retrying while offline, and reports back when it lands
+        Message message = outbox.send(matchId, otherUserId, messageText);
+        messageAdapter.append(message);
+        messagesRecyclerView.scrollToPosition(messageAdapter.getItemCount() - 1);
 
         // Clear input
         messageEditText.setText("");
     }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        for (Query query : messagesQueries) {
+            query.removeEventListener(messagesListener);
+        }
+        if (deliveredListener != null) {
+            deliveredUpToRef(otherUserId).removeEventListener(deliveredListener);
+        }
+        if (editedAtListener != null) {
+            editedAtRef().removeEventListener(editedAtListener);
+        }
+        if (outbox != null) {
+            outbox.removeListener(outboxListener);
+        }
+    }
+
     @Override
     public boolean onSupportNavigateUp() {
         onBackPressed();
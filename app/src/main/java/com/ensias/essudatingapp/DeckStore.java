@@ -0,0 +1,167 @@
+package com.ensias.essudatingapp;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the remaining discovery deck on disk so it survives process death.
+ *
+ * The file holds the unswiped cards, the pager cursor and the hash of the preferences
+ * the deck was built with, in a small binary format. Reads and writes run in order on
+ * one background thread; results are delivered on the main thread.
+ */
+public class DeckStore {
+
+    private static final String TAG = "DeckStore";
+    private static final String FILE_NAME = "candidate_deck.bin";
+    private static final int FORMAT_VERSION = 3;
+
+    public interface OnLoadedListener {
+        void onLoaded(SavedDeck savedDeck);
+    }
+
+    public static class SavedDeck {
+        private final int preferencesHash;
+        private final CandidatePager.Cursor cursor;
+        private final List<Candidate> candidates;
+
+        SavedDeck(int preferencesHash, CandidatePager.Cursor cursor, List<Candidate> candidates) {
+            this.preferencesHash = preferencesHash;
+            this.cursor = cursor;
+            this.candidates = candidates;
+        }
+
+        public boolean matches(int preferencesHash) {
+            return this.preferencesHash == preferencesHash;
+        }
+
+        public CandidatePager.Cursor getCursor() {
+            return cursor;
+        }
+
+        public List<Candidate> getCandidates() {
+            return candidates;
+        }
+    }
+
+    private final AtomicFile file;
+    private final String userId;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Handler ioHandler;
+
+    public DeckStore(Context context, String userId) {
+        this.file = new AtomicFile(new File(context.getFilesDir(), FILE_NAME));
+        this.userId = userId;
+
+        HandlerThread ioThread = new HandlerThread(TAG);
+        ioThread.start();
+        ioHandler = new Handler(ioThread.getLooper());
+    }
+
+    public void load(OnLoadedListener listener) {
+        ioHandler.post(() -> {
+            SavedDeck savedDeck = read();
+            mainHandler.post(() -> listener.onLoaded(savedDeck));
+        });
+    }
+
+    public void save(int preferencesHash, CandidatePager.Cursor cursor, List<Candidate> candidates) {
+        ioHandler.post(() -> write(preferencesHash, cursor, candidates));
+    }
+
+    // Lets writes already posted finish, then stops the thread
+    public void close() {
+        ioHandler.getLooper().quitSafely();
+    }
+
+    private SavedDeck read() {
+        try (DataInputStream in = new DataInputStream(file.openRead())) {
+            if (in.readInt() != FORMAT_VERSION || !userId.equals(in.readUTF())) {
+                return null;
+            }
+
+            int preferencesHash = in.readInt();
+            CandidatePager.Cursor cursor = null;
+            if (in.readBoolean()) {
+                cursor = new CandidatePager.Cursor(in.readInt(), in.readUTF());
+            }
+
+            int count = in.readInt();
+            List<Candidate> candidates = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                candidates.add(new Candidate(
+                        in.readUTF(),
+                        DataStreams.readNullable(in),
+                        DataStreams.readNullable(in),
+                        in.readInt(),
+                        DataStreams.readNullable(in),
+                        DataStreams.readNullable(in),
+                        DataStreams.readNullable(in),
+                        DataStreams.readNullable(in),
+                        DataStreams.readNullable(in),
+                        DataStreams.readNullable(in),
+                        in.readLong()
+                ));
+            }
+            return new SavedDeck(preferencesHash, cursor, candidates);
+        } catch (FileNotFoundException e) {
+            return null;
+        } catch (IOException e) {
+            Log.w(TAG, "Discarding unreadable deck", e);
+            return null;
+        }
+    }
+
+    private void write(int preferencesHash, CandidatePager.Cursor cursor, List<Candidate> candidates) {
+        FileOutputStream stream = null;
+        try {
+            stream = file.startWrite();
+            DataOutputStream out = new DataOutputStream(stream);
+
+            out.writeInt(FORMAT_VERSION);
+            out.writeUTF(userId);
+            out.writeInt(preferencesHash);
+            out.writeBoolean(cursor != null);
+            if (cursor != null) {
+                out.writeInt(cursor.age);
+                out.writeUTF(cursor.key);
+            }
+
+            out.writeInt(candidates.size());
+            for (Candidate candidate : candidates) {
+                out.writeUTF(candidate.getId());
+                DataStreams.writeNullable(out, candidate.getFirstName());
+                DataStreams.writeNullable(out, candidate.getLastName());
+                out.writeInt(candidate.getAge());
+                DataStreams.writeNullable(out, candidate.getGender());
+                DataStreams.writeNullable(out, candidate.getInterestedIn());
+                DataStreams.writeNullable(out, candidate.getCourse());
+                DataStreams.writeNullable(out, candidate.getProfileImage());
+                DataStreams.writeNullable(out, candidate.getBio());
+                DataStreams.writeNullable(out, candidate.getHobbies());
+                out.writeLong(candidate.getHobbyVector());
+            }
+
+            out.flush();
+            file.finishWrite(stream);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to save deck", e);
+            if (stream != null) {
+                file.failWrite(stream);
+            }
+        }
+    }
+}
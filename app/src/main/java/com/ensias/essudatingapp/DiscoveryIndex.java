@@ -0,0 +1,186 @@
+package com.ensias.essudatingapp;
+
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseReference;
+import com.google.firebase.database.Query;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Discovery index kept next to the users node so the home screen can query only the
+ * slice of users that matches the current preferences.
+ *
+ * Layout: discovery/{gender}/{course}/{uid} = card fields (name, age, gender,
+ * interestedIn, course, image, bio, hobbies, createdAt), so a card can be shown straight from the index entry.
+ *
+ * Every user is written under their own gender and course, and also under the "Any"
+ * wildcard for each, so a preference of "Everyone" or "Any" course is still a single
+ * range query on age.
+ *
+ * The index of existing users is built once with admin privileges by
+ * tools/discovery-backfill, which sets indexMeta/backfillVersion when it is done.
+ * discoveryMeta/{uid}/version records the layout each user's entry was written with. A
+ * client whose own entry is older rewrites just that entry on start, see migrateIfNeeded,
+ * so a layout change never needs a client to read or write anyone else's data.
+ */
+public class DiscoveryIndex {
+
+    public static final String NODE = "discovery";
+    public static final String META_NODE = "discoveryMeta";
+    public static final String BACKFILL_VERSION_PATH = "indexMeta/backfillVersion";
+    public static final String ANY = "Any";
+
+    // Bump when the entry layout changes so each user rewrites their entry on next start;
+    // tools/discovery-backfill has its own copy
+    static final int VERSION = 5;
+
+    // Firebase keys may not contain . $ # [ ] /
+    public static String key(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return "Unknown";
+        }
+        return value.trim().replaceAll("[.$#\\[\\]/]", "_");
+    }
+
+    // Maps the values stored by PreferencesActivity ("Men", "Women", "Everyone") to gender keys
+    public static String genderKeyForPreference(String genderPreference) {
+        if (genderPreference == null || genderPreference.isEmpty()
+                || genderPreference.equalsIgnoreCase("Everyone") || genderPreference.equalsIgnoreCase(ANY)) {
+            return ANY;
+        }
+        if (genderPreference.equalsIgnoreCase("Men")) return "Male";
+        if (genderPreference.equalsIgnoreCase("Women")) return "Female";
+        return key(genderPreference);
+    }
+
+    public static String courseKeyForPreference(String coursePreference) {
+        if (coursePreference == null || coursePreference.isEmpty() || coursePreference.equalsIgnoreCase(ANY)) {
+            return ANY;
+        }
+        return key(coursePreference);
+    }
+
+    public static Set<String> bucketPaths(String gender, String course) {
+        String genderKey = key(gender);
+        String courseKey = key(course);
+
+        Set<String> paths = new LinkedHashSet<>();
+        paths.add(NODE + "/" + genderKey + "/" + courseKey);
+        paths.add(NODE + "/" + genderKey + "/" + ANY);
+        paths.add(NODE + "/" + ANY + "/" + courseKey);
+        paths.add(NODE + "/" + ANY + "/" + ANY);
+        return paths;
+    }
+
+    public static Map<String, Object> entry(User user, String bio, String hobbies) {
+        Map<String, Object> entry = new HashMap<>();
+        entry.put("firstName", user.getFirstName());
+        entry.put("lastName", user.getLastName());
+        entry.put("age", user.getAge());
+        entry.put("gender", user.getGender());
+        entry.put("interestedIn", user.getInterestedIn());
+        entry.put("course", user.getCourse());
+        entry.put("profileImage", user.getProfileImage());
+        entry.put("bio", bio);
+        entry.put("hobbies", hobbies);
+        entry.put("createdAt", user.getCreatedAt());
+        return entry;
+    }
+
+    // Adds the writes for one user to a root-level multi-path update, marking the entry as current
+    public static void putEntry(Map<String, Object> updates, String userId, String gender, String course,
+                                Map<String, Object> entry) {
+        for (String path : bucketPaths(gender, course)) {
+            updates.put(path + "/" + userId, entry);
+        }
+        updates.put(META_NODE + "/" + userId + "/version", VERSION);
+    }
+
+    // Updates some card fields in place, e.g. after the profile setup screen
+    public static void putFields(Map<String, Object> updates, String userId, String gender, String course,
+                                 Map<String, Object> fields) {
+        for (String path : bucketPaths(gender, course)) {
+            for (Map.Entry<String, Object> field : fields.entrySet()) {
+                updates.put(path + "/" + userId + "/" + field.getKey(), field.getValue());
+            }
+        }
+    }
+
+    public static void putRemoval(Map<String, Object> updates, String userId, String gender, String course) {
+        for (String path : bucketPaths(gender, course)) {
+            updates.put(path + "/" + userId, null);
+        }
+    }
+
+    // Age range of one slice, starting right after the (age, key) of the last entry already fetched.
+    // Served by the server only with the .indexOn in database.rules.json; without it the client
+    // downloads the whole bucket and filters it locally.
+    public static Query candidatesQuery(DatabaseReference root, String genderPreference, String coursePreference,
+                                        int minAge, int maxAge, Integer afterAge, String afterKey) {
+        Query query = root.child(NODE)
+                .child(genderKeyForPreference(genderPreference))
+                .child(courseKeyForPreference(coursePreference))
+                .orderByChild("age");
+
+        if (afterKey != null) {
+            query = query.startAfter(afterAge, afterKey);
+        } else {
+            query = query.startAt(minAge);
+        }
+        return query.endAt(maxAge);
+    }
+
+    // Entries of the same slice created at or after the given time, for live updates; indexed
+    // like candidatesQuery
+    public static Query newSignupsQuery(DatabaseReference root, String genderPreference, String coursePreference,
+                                        long since) {
+        return root.child(NODE)
+                .child(genderKeyForPreference(genderPreference))
+                .child(courseKeyForPreference(coursePreference))
+                .orderByChild("createdAt")
+                .startAt(since);
+    }
+
+    // Brings this user's own entry, and the likedBy entries of their likes, up to the current
+    // version, then calls back so the caller can query. userSnapshot is users/{uid}.
+    public static void migrateIfNeeded(DatabaseReference root, DataSnapshot userSnapshot, MigrationCallback callback) {
+        String userId = userSnapshot.getKey();
+        root.child(META_NODE).child(userId).child("version").get().addOnCompleteListener(versionTask -> {
+            Long version = versionTask.isSuccessful() ? versionTask.getResult().getValue(Long.class) : null;
+            if (!versionTask.isSuccessful() || (version != null && version >= VERSION)) {
+                callback.onComplete(versionTask.isSuccessful());
+                return;
+            }
+            backfill(root, userSnapshot, callback);
+        });
+    }
+
+    // Rewrites one user's entry from their own record. Only paths owned by that user are set,
+    // so entries other clients write at the same time are never overwritten.
+    private static void backfill(DatabaseReference root, DataSnapshot userSnapshot, MigrationCallback callback) {
+        User user = userSnapshot.getValue(User.class);
+        if (user == null) {
+            callback.onComplete(false);
+            return;
+        }
+
+        String userId = userSnapshot.getKey();
+        DataSnapshot profileSnapshot = userSnapshot.child("profile");
+        Map<String, Object> updates = new HashMap<>();
+        putEntry(updates, userId, user.getGender(), user.getCourse(), entry(user,
+                profileSnapshot.child("bio").getValue(String.class),
+                profileSnapshot.child("hobbies").getValue(String.class)));
+
+        for (DataSnapshot interaction : userSnapshot.child("interactions").getChildren()) {
+            if ("like".equals(interaction.child("type").getValue(String.class))) {
+                Long timestamp = interaction.child("timestamp").getValue(Long.class);
+                LikedBySet.putSwipe(updates, userId, interaction.getKey(), true, timestamp != null ? timestamp : 0L);
+            }
+        }
+
+        root.updateChildren(updates).addOnCompleteListener(task -> callback.onComplete(task.isSuccessful()));
+    }
+}
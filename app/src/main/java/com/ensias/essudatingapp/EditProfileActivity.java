@@ -20,11 +20,10 @@ import com.bumptech.glide.Glide;
 import com.google.android.gms.tasks.OnCompleteListener;
 import com.google.android.gms.tasks.Task;
 import com.google.firebase.auth.FirebaseAuth;
-import com.google.firebase.database.DataSnapshot;
 import com.google.firebase.database.DatabaseError;
 import com.google.firebase.database.DatabaseReference;
 import com.google.firebase.database.FirebaseDatabase;
-import com.google.firebase.database.ValueEventListener;
+import com.google.firebase.database.ServerValue;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
@@ -45,6 +44,7 @@ public class EditProfileActivity extends AppCompatActivity {
     private String currentUserId;
     private Uri imageUri;
     private String currentProfileImageUrl;
+    private User currentUser;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -106,11 +106,12 @@ public class EditProfileActivity extends AppCompatActivity {
     }
 
     private void loadProfileData() {
-        mDatabase.child("users").child(currentUserId).addListenerForSingleValueEvent(new ValueEventListener() {
+        ProfileCache.getInstance(this).get(currentUserId, new ProfileCache.OnProfileListener() {
             @Override
-            public void onDataChange(@NonNull DataSnapshot dataSnapshot) {
-                if (dataSnapshot.exists()) {
-                    User user = dataSnapshot.getValue(User.class);
+            public void onProfile(ProfileCache.Profile profile) {
+                if (profile != null) {
+                    User user = profile.getUser();
+                    currentUser = user;
 
                     // Set basic info
                     firstNameEditText.setText(user.getFirstName());
@@ -128,25 +129,22 @@ public class EditProfileActivity extends AppCompatActivity {
                                 .into(profileImageView);
                     }
 
-                    // Get profile info
-                    DataSnapshot profileSnapshot = dataSnapshot.child("profile");
-                    if (profileSnapshot.exists()) {
-                        String bio = profileSnapshot.child("bio").getValue(String.class);
-                        String hobbies = profileSnapshot.child("hobbies").getValue(String.class);
-                        String relationshipGoals = profileSnapshot.child("relationshipGoals").getValue(String.class);
+                    // Set profile info
+                    String bio = profile.getBio();
+                    String hobbies = profile.getHobbies();
+                    String relationshipGoals = profile.getRelationshipGoals();
 
-                        bioEditText.setText(bio != null ? bio : "");
-                        hobbiesEditText.setText(hobbies != null ? hobbies : "");
+                    bioEditText.setText(bio != null ? bio : "");
+                    hobbiesEditText.setText(hobbies != null ? hobbies : "");
 
-                        if (relationshipGoals != null) {
-                            setSpinnerSelection(relationshipGoalsSpinner, relationshipGoals);
-                        }
+                    if (relationshipGoals != null) {
+                        setSpinnerSelection(relationshipGoalsSpinner, relationshipGoals);
                     }
                 }
             }
 
             @Override
-            public void onCancelled(@NonNull DatabaseError databaseError) {
+            public void onError(DatabaseError databaseError) {
                 Toast.makeText(EditProfileActivity.this, "Failed to load profile data: " + databaseError.getMessage(),
                         Toast.LENGTH_SHORT).show();
             }
@@ -239,47 +237,66 @@ public class EditProfileActivity extends AppCompatActivity {
 
     private void saveProfileData(String firstName, String lastName, String bio, String hobbies,
                                  String course, String relationshipGoals, String imageUrl) {
-        // Update user data
-        Map<String, Object> userUpdates = new HashMap<>();
-        userUpdates.put("firstName", firstName);
-        userUpdates.put("lastName", lastName);
-        userUpdates.put("course", course);
-        if (imageUrl != null) {
-            userUpdates.put("profileImage", imageUrl);
+        // The index entry is rebuilt from the loaded record
+        if (currentUser == null) {
+            Toast.makeText(EditProfileActivity.this, "Profile is still loading", Toast.LENGTH_SHORT).show();
+            return;
         }
 
-        // Update profile data
-        Map<String, Object> profileUpdates = new HashMap<>();
-        profileUpdates.put("bio", bio);
-        profileUpdates.put("hobbies", hobbies);
-        profileUpdates.put("relationshipGoals", relationshipGoals);
-
-        // Save to Firebase
-        mDatabase.child("users").child(currentUserId).updateChildren(userUpdates)
-                .addOnCompleteListener(new OnCompleteListener<Void>() {
-                    @Override
-                    public void onComplete(@NonNull Task<Void> task) {
-                        if (task.isSuccessful()) {
-                            // Save profile data
-                            mDatabase.child("users").child(currentUserId).child("profile").updateChildren(profileUpdates)
-                                    .addOnCompleteListener(new OnCompleteListener<Void>() {
-                                        @Override
-                                        public void onComplete(@NonNull Task<Void> task) {
-                                            if (task.isSuccessful()) {
-                                                Toast.makeText(EditProfileActivity.this, "Profile updated successfully!", Toast.LENGTH_SHORT).show();
-                                                finish();
-                                            } else {
-                                                Toast.makeText(EditProfileActivity.this, "Failed to update profile: " + task.getException().getMessage(),
-                                                        Toast.LENGTH_SHORT).show();
-                                            }
-                                        }
-                                    });
-                        } else {
-                            Toast.makeText(EditProfileActivity.this, "Failed to update user data: " + task.getException().getMessage(),
-                                    Toast.LENGTH_SHORT).show();
+        // The partners whose match lists show our name and picture
+        mDatabase.child(MatchSummaries.NODE).child(currentUserId).get().addOnCompleteListener(summariesTask -> {
+            if (!summariesTask.isSuccessful()) {
+                Toast.makeText(EditProfileActivity.this, "Failed to update profile: " + summariesTask.getException().getMessage(),
+                        Toast.LENGTH_SHORT).show();
+                return;
+            }
+
+            // Edit a copy, so the loaded record still describes what is saved if the write fails
+            User edited = new User(currentUser);
+            edited.setFirstName(firstName);
+            edited.setLastName(lastName);
+            edited.setCourse(course);
+            if (imageUrl != null) {
+                edited.setProfileImage(imageUrl);
+            }
+
+            // User fields, profile fields, discovery card and match summaries in one atomic write
+            String userPath = "users/" + currentUserId + "/";
+            Map<String, Object> updates = new HashMap<>();
+            updates.put(userPath + "firstName", firstName);
+            updates.put(userPath + "lastName", lastName);
+            updates.put(userPath + "course", course);
+            if (imageUrl != null) {
+                updates.put(userPath + "profileImage", imageUrl);
+            }
+            updates.put(userPath + "updatedAt", ServerValue.TIMESTAMP); // invalidates cached copies, see ProfileCache
+            updates.put(userPath + "profile/bio", bio);
+            updates.put(userPath + "profile/hobbies", hobbies);
+            updates.put(userPath + "profile/relationshipGoals", relationshipGoals);
+
+            // Move the discovery card first if the course changed
+            if (!course.equals(currentUser.getCourse())) {
+                DiscoveryIndex.putRemoval(updates, currentUserId, currentUser.getGender(), currentUser.getCourse());
+            }
+            DiscoveryIndex.putEntry(updates, currentUserId, edited.getGender(), course,
+                    DiscoveryIndex.entry(edited, bio, hobbies));
+            MatchSummaries.putProfile(updates, summariesTask.getResult(), firstName, lastName, edited.getProfileImage());
+
+            mDatabase.updateChildren(updates)
+                    .addOnCompleteListener(new OnCompleteListener<Void>() {
+                        @Override
+                        public void onComplete(@NonNull Task<Void> task) {
+                            if (task.isSuccessful()) {
+                                ProfileCache.getInstance(EditProfileActivity.this).invalidate(currentUserId);
+                                Toast.makeText(EditProfileActivity.this, "Profile updated successfully!", Toast.LENGTH_SHORT).show();
+                                finish();
+                            } else {
+                                Toast.makeText(EditProfileActivity.this, "Failed to update profile: " + task.getException().getMessage(),
+                                        Toast.LENGTH_SHORT).show();
+                            }
                         }
-                    }
-                });
+                    });
+        });
     }
 
     @Override
@@ -0,0 +1,58 @@
+package com.ensias.essudatingapp;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Encodes hobbies text as a fixed-width bitset over R.array.hobbies_array.
+ *
+ * Bit i is set when hobby i of the array appears in the text, so the overlap between two
+ * users is the popcount of the AND of their vectors. The vector is a single long, which
+ * covers the first 64 hobbies of the array.
+ */
+public class HobbyVector {
+
+    public static final int MAX_HOBBIES = Long.SIZE;
+
+    private final Map<String, Integer> bitByHobby = new HashMap<>();
+
+    public HobbyVector(String[] hobbies) {
+        for (int i = 0; i < hobbies.length && i < MAX_HOBBIES; i++) {
+            bitByHobby.put(normalize(hobbies[i]), i);
+        }
+    }
+
+    // Accepts both the comma separated preference field and free-text profile hobbies
+    public long encode(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0L;
+        }
+
+        long vector = 0L;
+        for (String token : text.split("[,;\\n]+")) {
+            Integer bit = bitByHobby.get(normalize(token));
+            if (bit != null) {
+                vector |= 1L << bit;
+                continue;
+            }
+
+            // Not a whole hobby name, look for hobby words inside it ("music and hiking")
+            for (String word : token.split("[^\\p{L}]+")) {
+                bit = bitByHobby.get(normalize(word));
+                if (bit != null) {
+                    vector |= 1L << bit;
+                }
+            }
+        }
+        return vector;
+    }
+
+    public static int overlap(long a, long b) {
+        return Long.bitCount(a & b);
+    }
+
+    private static String normalize(String hobby) {
+        return hobby.trim().toLowerCase(Locale.ROOT);
+    }
+}
@@ -9,7 +9,6 @@ import android.widget.*;
 import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.appcompat.widget.Toolbar;
-import com.bumptech.glide.Glide;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.database.*;
 
@@ -26,9 +25,20 @@ public class HomeActivity extends AppCompatActivity {
     private DatabaseReference mDatabase;
     private String currentUserId;
     private User currentUser;
-    private User displayedUser;
-    private List<String> potentialMatches;
-    private int currentIndex = -1;
+    private Candidate displayedUser;
+    private CandidateDeck candidateDeck;
+    private HobbyVector hobbyVectors;
+    private String currentUserHobbies;
+    private CandidatePager candidatePager;
+    private PreferenceFilter preferenceFilter;
+    private DeckStore deckStore;
+    private DeckStore.SavedDeck restoredDeck;
+    private final long sessionStart = System.currentTimeMillis();
+    private Query newSignupsQuery;
+    private ChildEventListener newSignupsListener;
+    private InteractionRepository interactions;
+    private SwipeQueue.Listener swipeListener;
+    private final Runnable onInteractionsReady = this::loadPotentialMatches;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -72,8 +82,45 @@ public class HomeActivity extends AppCompatActivity {
             }
         });
 
-        potentialMatches = new ArrayList<>();
-        loadCurrentUserData();
+        candidateDeck = new CandidateDeck(this);
+        ProfileCodes.init(this);
+        hobbyVectors = new HobbyVector(getResources().getStringArray(R.array.hobbies_array));
+        profileImageView.post(() -> candidateDeck.setImageSize(
+                profileImageView.getWidth() - profileImageView.getPaddingLeft() - profileImageView.getPaddingRight(),
+                profileImageView.getHeight() - profileImageView.getPaddingTop() - profileImageView.getPaddingBottom()));
+        interactions = InteractionRepository.getInstance(this, currentUserId);
+        swipeListener = new SwipeQueue.Listener() {
+            @Override
+            public void onPendingCountChanged(int pending) {
+                showPendingSwipes(pending);
+            }
+
+            @Override
+            public void onMatch(String userId) {
+                Toast.makeText(HomeActivity.this, "You have a new match!", Toast.LENGTH_LONG).show();
+            }
+
+            @Override
+            public void onSwipesDropped(int count, String reason) {
+                Toast.makeText(HomeActivity.this, count + " swipes could not be saved: " + reason,
+                        Toast.LENGTH_LONG).show();
+            }
+        };
+        interactions.addListener(swipeListener);
+
+        // Starts sending chat messages left unsent by the last session
+        Outbox.getInstance(this, currentUserId);
+        deckStore = new DeckStore(this, currentUserId);
+
+        // Show the deck saved by the last session right away, then refresh it in the background
+        deckStore.load(savedDeck -> {
+            restoredDeck = savedDeck;
+            if (savedDeck != null && !savedDeck.getCandidates().isEmpty()) {
+                candidateDeck.append(savedDeck.getCandidates());
+                showNextUser();
+            }
+            loadCurrentUserData();
+        });
     }
 
     private void loadCurrentUserData() {
@@ -81,9 +128,16 @@ public class HomeActivity extends AppCompatActivity {
             @Override
             public void onDataChange(@NonNull DataSnapshot snapshot) {
                 if (snapshot.exists()) {
-                    currentUser = snapshot.getValue(User.class);
-                    currentUser.setId(currentUserId);
-                    loadPotentialMatches();
+                    // Also kept in the profile cache, e.g. for the summaries written with a match
+                    currentUser = ProfileCache.getInstance(HomeActivity.this).put(snapshot).getUser();
+                    currentUserHobbies = snapshot.child("profile").child("hobbies").getValue(String.class);
+
+                    // Make sure our own index entry is current and past swipes are known before querying
+                    DiscoveryIndex.migrateIfNeeded(mDatabase, snapshot, success -> {
+                        if (!isDestroyed()) {
+                            interactions.whenReady(onInteractionsReady);
+                        }
+                    });
                 }
             }
 
@@ -95,89 +149,37 @@ public class HomeActivity extends AppCompatActivity {
     }
 
     private void loadPotentialMatches() {
-        potentialMatches.clear();
-        currentIndex = -1;
-
         mDatabase.child("users").child(currentUserId).child("preferences")
                 .addListenerForSingleValueEvent(new ValueEventListener() {
                     @Override
                     public void onDataChange(@NonNull DataSnapshot snapshot) {
-                        int minAge = 18;
-                        int maxAge = 30;
-                        String genderPreference = "Any";
-                        String coursePreference = "";
-
-                        if (snapshot.exists()) {
-                            Long minAgeLong = snapshot.child("minAge").getValue(Long.class);
-                            if (minAgeLong != null) minAge = minAgeLong.intValue();
+                        preferenceFilter = PreferenceFilter.fromSnapshot(snapshot, currentUser);
 
-                            Long maxAgeLong = snapshot.child("maxAge").getValue(Long.class);
-                            if (maxAgeLong != null) maxAge = maxAgeLong.intValue();
+                        String hobbiesPreference = snapshot.child("hobbiesPreference").getValue(String.class);
+                        if (hobbiesPreference == null || hobbiesPreference.isEmpty()) {
+                            hobbiesPreference = currentUserHobbies;
+                        }
+                        candidateDeck.setHobbyPreference(hobbyVectors.encode(hobbiesPreference));
+
+                        // Keep the restored deck only if it was built for the same preferences
+                        CandidatePager.Cursor startCursor = null;
+                        if (restoredDeck != null && restoredDeck.matches(preferenceFilter.hash())) {
+                            startCursor = restoredDeck.getCursor();
+                            candidateDeck.removeSeen(interactions);
+                        } else {
+                            candidateDeck.clear();
+                            displayedUser = null;
+                        }
+                        restoredDeck = null;
 
-                            String genderPref = snapshot.child("genderPreference").getValue(String.class);
-                            if (genderPref != null) genderPreference = genderPref;
+                        candidatePager = new CandidatePager(mDatabase, preferenceFilter, startCursor);
+                        listenForNewSignups();
 
-                            String coursePref = snapshot.child("coursePreference").getValue(String.class);
-                            if (coursePref != null) coursePreference = coursePref;
+                        if (displayedUser == null) {
+                            showNextUser();
+                        } else if (candidateDeck.needsMore()) {
+                            loadNextPage();
                         }
-
-                        Query usersQuery = mDatabase.child("users");
-                        int finalMinAge = minAge;
-                        int finalMaxAge = maxAge;
-                        String finalGenderPreference = genderPreference;
-                        String finalCoursePreference = coursePreference;
-
-                        usersQuery.addListenerForSingleValueEvent(new ValueEventListener() {
-                            @Override
-                            public void onDataChange(@NonNull DataSnapshot snapshot) {
-                                for (DataSnapshot userSnapshot : snapshot.getChildren()) {
-                                    String userId = userSnapshot.getKey();
-                                    if (userId.equals(currentUserId)) continue;
-
-                                    User user = userSnapshot.getValue(User.class);
-                                    if (user == null) continue;
-                                    user.setId(userId);
-
-                                    mDatabase.child("users").child(currentUserId).child("interactions").child(userId)
-                                            .addListenerForSingleValueEvent(new ValueEventListener() {
-                                                @Override
-                                                public void onDataChange(@NonNull DataSnapshot interactionSnapshot) {
-                                                    if (!interactionSnapshot.exists()) {
-                                                        int age = user.getAge();
-                                                        String gender = user.getGender();
-                                                        String course = user.getCourse();
-
-                                                        boolean ageOK = age >= finalMinAge && age <= finalMaxAge;
-                                                        boolean genderOK = finalGenderPreference.equalsIgnoreCase("Any") ||
-                                                                finalGenderPreference.equalsIgnoreCase(gender);
-                                                        boolean courseOK = finalCoursePreference.isEmpty() ||
-                                                                finalCoursePreference.equalsIgnoreCase(course);
-
-                                                        if (ageOK && genderOK && courseOK) {
-                                                            potentialMatches.add(userId);
-                                                            if (currentIndex == -1) {
-                                                                currentIndex = 0;
-                                                                displayUser(userId);
-                                                            }
-                                                        }
-                                                    }
-                                                }
-
-                                                @Override
-                                                public void onCancelled(@NonNull DatabaseError error) {}
-                                            });
-                                }
-
-                                if (potentialMatches.isEmpty()) {
-                                    showNextUser(); // will trigger the "no users" view
-                                }
-                            }
-
-                            @Override
-                            public void onCancelled(@NonNull DatabaseError error) {
-                                Toast.makeText(HomeActivity.this, "Failed to load users.", Toast.LENGTH_SHORT).show();
-                            }
-                        });
                     }
 
                     @Override
@@ -187,59 +189,133 @@ public class HomeActivity extends AppCompatActivity {
                 });
     }
 
-    private void displayUser(String userId) {
-        mDatabase.child("users").child(userId).addListenerForSingleValueEvent(new ValueEventListener() {
+    private void loadNextPage() {
+        candidatePager.loadNextPage(new CandidatePager.OnPageListener() {
             @Override
-            public void onDataChange(@NonNull DataSnapshot snapshot) {
-                if (snapshot.exists()) {
-                    displayedUser = snapshot.getValue(User.class);
-                    displayedUser.setId(userId);
-
-                    // Load profile image
-                    if (displayedUser.getProfileImage() != null && !displayedUser.getProfileImage().isEmpty()) {
-                        Glide.with(HomeActivity.this)
-                                .load(displayedUser.getProfileImage())
-                                .placeholder(R.drawable.default_profile)
-                                .into(profileImageView);
-                    } else {
-                        profileImageView.setImageResource(R.drawable.default_profile);
+            public void onPage(List<DataSnapshot> entries) {
+                // The index query already narrows the slice, the compiled filter is a cheap recheck
+                List<Candidate> page = new ArrayList<>(entries.size());
+                for (DataSnapshot entrySnapshot : entries) {
+                    String userId = entrySnapshot.getKey();
+                    if (userId.equals(currentUserId) || interactions.hasInteracted(userId)) continue;
+
+                    Candidate candidate = Candidate.fromIndexEntry(entrySnapshot, hobbyVectors);
+                    if (preferenceFilter.accepts(candidate)) {
+                        page.add(candidate);
                     }
+                }
 
-                    // Set basic info
-                    nameAgeTextView.setText(displayedUser.getFirstName() + " " + displayedUser.getLastName() + ", " + displayedUser.getAge());
-                    courseTextView.setText(displayedUser.getCourse());
+                // Reranked with the cards not yet dealt, best hobby overlap first
+                candidateDeck.append(page);
 
-                    // ✅ Get nested profile info
-                    DataSnapshot profileSnapshot = snapshot.child("profile");
+                if (displayedUser == null) {
+                    showNextUser(); // first card as soon as a page yields one
+                } else if (candidateDeck.needsMore() && !candidatePager.isExhausted()) {
+                    loadNextPage();
+                }
+            }
+
+            @Override
+            public void onError(DatabaseError error) {
+                Toast.makeText(HomeActivity.this, "Failed to load users.", Toast.LENGTH_SHORT).show();
+            }
+        });
+    }
+
+    // Appends people who register while this screen is open, without refetching the slice
+    private void listenForNewSignups() {
+        if (newSignupsQuery != null) {
+            newSignupsQuery.removeEventListener(newSignupsListener);
+        }
 
-                    String bio = profileSnapshot.child("bio").getValue(String.class);
-                    String hobbies = profileSnapshot.child("hobbies").getValue(String.class);
+        newSignupsQuery = DiscoveryIndex.newSignupsQuery(mDatabase, preferenceFilter.getGenderPreference(),
+                preferenceFilter.getCoursePreference(), sessionStart);
+        newSignupsListener = new ChildEventListener() {
+            @Override
+            public void onChildAdded(@NonNull DataSnapshot snapshot, String previousChildName) {
+                String userId = snapshot.getKey();
+                if (userId.equals(currentUserId) || interactions.hasInteracted(userId)) return;
 
-                    bioTextView.setText(bio != null ? bio : "No bio provided");
-                    hobbiesTextView.setText(hobbies != null ? hobbies : "No hobbies listed");
+                Candidate candidate = Candidate.fromIndexEntry(snapshot, hobbyVectors);
+                if (!preferenceFilter.accepts(candidate)) return;
 
-                    // Show profile card and controls
-                    userCardView.setVisibility(View.VISIBLE);
-                    likeButton.setVisibility(View.VISIBLE);
-                    skipButton.setVisibility(View.VISIBLE);
-                    viewProfileButton.setVisibility(View.VISIBLE);
-                    noMatchesTextView.setVisibility(View.GONE);
+                candidateDeck.append(candidate);
+                if (displayedUser == null) {
+                    showNextUser();
                 }
             }
 
+            // Registration writes the card first; profile setup adds the bio and hobbies a moment later
             @Override
-            public void onCancelled(@NonNull DatabaseError error) {
-                Toast.makeText(HomeActivity.this, "Failed to load user profile.", Toast.LENGTH_SHORT).show();
+            public void onChildChanged(@NonNull DataSnapshot snapshot, String previousChildName) {
+                Candidate candidate = Candidate.fromIndexEntry(snapshot, hobbyVectors);
+                if (preferenceFilter.accepts(candidate)) {
+                    candidateDeck.update(candidate);
+                } else {
+                    candidateDeck.remove(candidate.getId());
+                }
             }
-        });
+
+            @Override
+            public void onChildRemoved(@NonNull DataSnapshot snapshot) {
+                candidateDeck.remove(snapshot.getKey());
+            }
+
+            @Override
+            public void onChildMoved(@NonNull DataSnapshot snapshot, String previousChildName) {}
+
+            @Override
+            public void onCancelled(@NonNull DatabaseError error) {}
+        };
+        newSignupsQuery.addChildEventListener(newSignupsListener);
     }
 
+    private void displayUser(Candidate candidate) {
+        displayedUser = candidate;
+        ProfileCache.getInstance(this).putCandidate(candidate); // "View profile" opens from memory
+
+        // Card fields come from the index entry; the image is normally already decoded in memory
+        if (candidate.hasProfileImage()) {
+            CandidateDeck.imageRequest(this, candidate.getProfileImage()).into(profileImageView);
+        } else {
+            profileImageView.setImageResource(R.drawable.default_profile);
+        }
+
+        // Set basic info
+        nameAgeTextView.setText(candidate.getFirstName() + " " + candidate.getLastName() + ", " + candidate.getAge());
+        courseTextView.setText(candidate.getCourse());
+
+        String bio = candidate.getBio();
+        String hobbies = candidate.getHobbies();
+
+        bioTextView.setText(bio != null ? bio : "No bio provided");
+        hobbiesTextView.setText(hobbies != null ? hobbies : "No hobbies listed");
+
+        // Show profile card and controls
+        userCardView.setVisibility(View.VISIBLE);
+        likeButton.setVisibility(View.VISIBLE);
+        skipButton.setVisibility(View.VISIBLE);
+        viewProfileButton.setVisibility(View.VISIBLE);
+        noMatchesTextView.setVisibility(View.GONE);
+    }
 
     private void showNextUser() {
-        currentIndex++;
+        Candidate candidate = candidateDeck.next();
 
-        if (currentIndex < potentialMatches.size()) {
-            displayUser(potentialMatches.get(currentIndex));
+        // Fetch the next page before the deck runs dry; no pager yet while a restored deck is shown
+        if (candidatePager != null && candidateDeck.needsMore() && !candidatePager.isExhausted()) {
+            loadNextPage();
+        }
+
+        if (candidate != null) {
+            displayUser(candidate);
+        } else if (candidatePager == null || !candidatePager.isExhausted() || candidatePager.isLoading()) {
+            // Waiting on the next page, it shows its first card when it arrives
+            displayedUser = null;
+            userCardView.setVisibility(View.GONE);
+            likeButton.setVisibility(View.GONE);
+            skipButton.setVisibility(View.GONE);
+            viewProfileButton.setVisibility(View.GONE);
         } else {
             displayedUser = null;
 
@@ -255,68 +331,45 @@ public class HomeActivity extends AppCompatActivity {
     }
 
     private void likeUser(String userId) {
-        Map<String, Object> likeData = new HashMap<>();
-        likeData.put("type", "like");
-        likeData.put("timestamp", System.currentTimeMillis());
-
-        mDatabase.child("users").child(currentUserId).child("interactions").child(userId)
-                .setValue(likeData)
-                .addOnCompleteListener(task -> {
-                    if (task.isSuccessful()) {
-                        checkForMatch(userId);
-                        showNextUser();
-                    }
-                });
+        interactions.like(userId);
+        showNextUser();
     }
 
     private void skipUser(String userId) {
-        Map<String, Object> skipData = new HashMap<>();
-        skipData.put("type", "skip");
-        skipData.put("timestamp", System.currentTimeMillis());
-
-        mDatabase.child("users").child(currentUserId).child("interactions").child(userId)
-                .setValue(skipData)
-                .addOnCompleteListener(task -> {
-                    if (task.isSuccessful()) {
-                        showNextUser();
-                    }
-                });
+        interactions.skip(userId);
+        showNextUser();
     }
 
-    private void checkForMatch(String userId) {
-        mDatabase.child("users").child(userId).child("interactions").child(currentUserId)
-                .addListenerForSingleValueEvent(new ValueEventListener() {
-                    @Override
-                    public void onDataChange(@NonNull DataSnapshot snapshot) {
-                        if (snapshot.exists()) {
-                            String type = snapshot.child("type").getValue(String.class);
-                            if ("like".equals(type)) {
-                                createMatch(userId);
-                            }
-                        }
-                    }
+    // Unsent swipes as the toolbar subtitle, cleared once the queue drains
+    private void showPendingSwipes(int pending) {
+        getSupportActionBar().setSubtitle(pending > 0 ? pending + " swipes pending" : null);
+    }
 
-                    @Override
-                    public void onCancelled(@NonNull DatabaseError error) {}
-                });
+    @Override
+    protected void onPause() {
+        super.onPause();
+        interactions.flush();
     }
 
-    private void createMatch(String matchedUserId) {
-        String matchId = mDatabase.child("matches").push().getKey();
+    @Override
+    protected void onStop() {
+        super.onStop();
 
-        Map<String, Object> matchData = new HashMap<>();
-        matchData.put("user1", currentUserId);
-        matchData.put("user2", matchedUserId);
-        matchData.put("timestamp", System.currentTimeMillis());
+        // Until the refresh has run the file on disk is still the most recent deck
+        if (candidatePager != null) {
+            deckStore.save(preferenceFilter.hash(), candidatePager.getCursor(), candidateDeck.unswiped());
+        }
+    }
 
-        mDatabase.child("matches").child(matchId).setValue(matchData)
-                .addOnCompleteListener(task -> {
-                    if (task.isSuccessful()) {
-                        mDatabase.child("users").child(currentUserId).child("matches").child(matchId).setValue(true);
-                        mDatabase.child("users").child(matchedUserId).child("matches").child(matchId).setValue(true);
-                        Toast.makeText(this, "You have a new match!", Toast.LENGTH_LONG).show();
-                    }
-                });
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        interactions.removeListener(swipeListener);
+        interactions.cancelWhenReady(onInteractionsReady);
+        deckStore.close();
+        if (newSignupsQuery != null) {
+            newSignupsQuery.removeEventListener(newSignupsListener);
+        }
     }
 
     @Override
@@ -0,0 +1,110 @@
+package com.ensias.essudatingapp;
+
+import android.content.Context;
+import com.google.firebase.database.FirebaseDatabase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Process-wide view of the current user's likes and skips, shared by every screen.
+ *
+ * Reads are answered synchronously from one SeenSet listener on users/{me}/interactions
+ * plus the swipes still waiting in the SwipeQueue. Writes go through like() and skip(),
+ * the only code path that records a swipe; the queue takes care of batching, the journal,
+ * the likedBy fan-out and match creation.
+ */
+public class InteractionRepository {
+
+    private static InteractionRepository instance;
+
+    private final String userId;
+    private final SeenSet seenSet;
+    private final SwipeQueue swipeQueue;
+    private final List<Runnable> onReady = new ArrayList<>();
+    private boolean ready;
+
+    // One repository per signed-in user for the whole process
+    public static synchronized InteractionRepository getInstance(Context context, String userId) {
+        if (instance == null || !instance.userId.equals(userId)) {
+            if (instance != null) {
+                instance.shutdown();
+            }
+            instance = new InteractionRepository(context.getApplicationContext(), userId);
+        }
+        return instance;
+    }
+
+    // Signed out; unsent swipes stay in the journal until this user signs in again
+    public static synchronized void release() {
+        if (instance != null) {
+            instance.shutdown();
+            instance = null;
+        }
+    }
+
+    private InteractionRepository(Context context, String userId) {
+        this.userId = userId;
+        this.seenSet = new SeenSet(FirebaseDatabase.getInstance().getReference(), userId);
+        this.swipeQueue = new SwipeQueue(context, FirebaseDatabase.getInstance().getReference(), userId, seenSet);
+
+        // Ready once the interactions are loaded and the journal has been read back
+        seenSet.start(() -> swipeQueue.whenLoaded(() -> {
+            for (String pendingId : swipeQueue.getPendingUserIds()) {
+                seenSet.add(pendingId);
+            }
+            ready = true;
+            for (Runnable runnable : onReady) {
+                runnable.run();
+            }
+            onReady.clear();
+        }));
+    }
+
+    public void whenReady(Runnable runnable) {
+        if (ready) {
+            runnable.run();
+        } else {
+            onReady.add(runnable);
+        }
+    }
+
+    // For screens destroyed before the repository was ready, so it does not keep them alive
+    public void cancelWhenReady(Runnable runnable) {
+        onReady.remove(runnable);
+    }
+
+    // Liked or skipped, stored or still queued
+    public boolean hasInteracted(String otherUserId) {
+        return seenSet.contains(otherUserId);
+    }
+
+    public void like(String otherUserId) {
+        seenSet.add(otherUserId);
+        swipeQueue.enqueue(otherUserId, SwipeQueue.TYPE_LIKE);
+    }
+
+    public void skip(String otherUserId) {
+        seenSet.add(otherUserId);
+        swipeQueue.enqueue(otherUserId, SwipeQueue.TYPE_SKIP);
+    }
+
+    public void addListener(SwipeQueue.Listener listener) {
+        swipeQueue.addListener(listener);
+    }
+
+    public void removeListener(SwipeQueue.Listener listener) {
+        swipeQueue.removeListener(listener);
+    }
+
+    // Sends queued swipes now, e.g. when a screen pauses
+    public void flush() {
+        swipeQueue.flush();
+    }
+
+    // Another user signed in; this user's unsent swipes stay in their journal
+    private void shutdown() {
+        seenSet.stop();
+        swipeQueue.shutdown();
+    }
+}
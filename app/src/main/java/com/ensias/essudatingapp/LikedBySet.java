@@ -0,0 +1,116 @@
+package com.ensias.essudatingapp;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import com.google.firebase.database.ChildEventListener;
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
+import com.google.firebase.database.DatabaseReference;
+import com.google.firebase.database.ValueEventListener;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Live set of the users who liked the current user, read from likedBy/{me}.
+ *
+ * Every like is also written to likedBy/{target}/{liker}, so "does this person already
+ * like me?" is a local lookup and a like can be turned into a match without another read.
+ * Likes that arrive after the initial load are reported to the listener, so a match is
+ * still found when both users like each other before either sees the other's like.
+ *
+ * Likes stored before the index existed only get their entry from the admin backfill;
+ * until it has run, isBackfilled() is false and callers fall back to reading the like.
+ */
+public class LikedBySet {
+
+    public static final String NODE = "likedBy";
+
+    public interface Listener {
+        void onLikedBy(String likerId);
+    }
+
+    private final DatabaseReference root;
+    private final DatabaseReference likedByRef;
+    private final Set<String> likerIds = new HashSet<>();
+    private ChildEventListener childListener;
+    private boolean loaded;
+    private boolean backfilled;
+
+    public LikedBySet(DatabaseReference root, String userId) {
+        this.root = root;
+        likedByRef = root.child(NODE).child(userId);
+    }
+
+    // Adds the likedBy write for a like, or its removal for a skip, to a root-level multi-path update
+    public static void putSwipe(Map<String, Object> updates, String likerId, String targetId,
+                                boolean like, long timestamp) {
+        updates.put(NODE + "/" + targetId + "/" + likerId, like ? timestamp : null);
+    }
+
+    public void start(Listener listener) {
+        if (childListener != null) {
+            return;
+        }
+
+        root.child(DiscoveryIndex.BACKFILL_VERSION_PATH).get().addOnSuccessListener(snapshot ->
+                backfilled = snapshot.exists());
+
+        childListener = new ChildEventListener() {
+            @Override
+            public void onChildAdded(@NonNull DataSnapshot snapshot, @Nullable String previousChildName) {
+                likerIds.add(snapshot.getKey());
+                if (loaded) {
+                    listener.onLikedBy(snapshot.getKey());
+                }
+            }
+
+            @Override
+            public void onChildChanged(@NonNull DataSnapshot snapshot, @Nullable String previousChildName) {}
+
+            @Override
+            public void onChildRemoved(@NonNull DataSnapshot snapshot) {
+                likerIds.remove(snapshot.getKey());
+            }
+
+            @Override
+            public void onChildMoved(@NonNull DataSnapshot snapshot, @Nullable String previousChildName) {}
+
+            @Override
+            public void onCancelled(@NonNull DatabaseError error) {}
+        };
+        likedByRef.addChildEventListener(childListener);
+
+        // Value events fire after the child events for the same data, so this marks the end
+        // of the initial load, see SeenSet
+        likedByRef.addListenerForSingleValueEvent(new ValueEventListener() {
+            @Override
+            public void onDataChange(@NonNull DataSnapshot snapshot) {
+                loaded = true;
+            }
+
+            @Override
+            public void onCancelled(@NonNull DatabaseError error) {
+                loaded = true;
+            }
+        });
+    }
+
+    public boolean contains(String userId) {
+        return likerIds.contains(userId);
+    }
+
+    // Whether every stored like has its likedBy entry, so a miss in contains() is final
+    public boolean isBackfilled() {
+        return backfilled;
+    }
+
+    public void stop() {
+        if (childListener != null) {
+            likedByRef.removeEventListener(childListener);
+            childListener = null;
+            loaded = false;
+        }
+    }
+}
@@ -8,6 +8,8 @@ import android.view.ViewGroup;
 import android.widget.ImageView;
 import android.widget.TextView;
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
 import androidx.recyclerview.widget.RecyclerView;
 import com.bumptech.glide.Glide;
 
@@ -15,21 +17,48 @@ import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
+import java.util.Objects;
 
-public class MatchAdapter extends RecyclerView.Adapter<MatchAdapter.MatchViewHolder> {
+public class MatchAdapter extends ListAdapter<MatchSummary, MatchAdapter.MatchViewHolder> {
+
+    // Only the last message changed, the name and avatar stay as they are
+    private static final Object PAYLOAD_LAST_MESSAGE = new Object();
+
+    private static final DiffUtil.ItemCallback<MatchSummary> DIFF_CALLBACK = new DiffUtil.ItemCallback<MatchSummary>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull MatchSummary oldItem, @NonNull MatchSummary newItem) {
+            return oldItem.getId().equals(newItem.getId());
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull MatchSummary oldItem, @NonNull MatchSummary newItem) {
+            return sameProfile(oldItem, newItem) && sameLastMessage(oldItem, newItem);
+        }
+
+        @Override
+        public Object getChangePayload(@NonNull MatchSummary oldItem, @NonNull MatchSummary newItem) {
+            return sameProfile(oldItem, newItem) ? PAYLOAD_LAST_MESSAGE : null;
+        }
+    };
 
     private Context context;
-    private List<Match> matches;
     private OnMatchClickListener listener;
+    private final StableIds stableIds = new StableIds();
 
     public interface OnMatchClickListener {
         void onMatchClick(int position);
     }
 
-    public MatchAdapter(Context context, List<Match> matches, OnMatchClickListener listener) {
+    public MatchAdapter(Context context, OnMatchClickListener listener) {
+        super(DIFF_CALLBACK);
         this.context = context;
-        this.matches = matches;
         this.listener = listener;
+        setHasStableIds(true);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return stableIds.idFor(getItem(position).getId());
     }
 
     @NonNull
@@ -39,24 +68,36 @@ public class MatchAdapter extends RecyclerView.Adapter<MatchAdapter.MatchViewHol
         return new MatchViewHolder(view);
     }
 
+    @Override
+    public void onBindViewHolder(@NonNull MatchViewHolder holder, int position, @NonNull List<Object> payloads) {
+        if (payloads.contains(PAYLOAD_LAST_MESSAGE)) {
+            bindLastMessage(holder, getItem(position));
+        } else {
+            onBindViewHolder(holder, position);
+        }
+    }
+
     @Override
     public void onBindViewHolder(@NonNull MatchViewHolder holder, int position) {
-        Match match = matches.get(position);
-        User otherUser = match.getOtherUser();
+        MatchSummary match = getItem(position);
 
         // Set user info
-        holder.nameTextView.setText(otherUser.getFirstName() + " " + otherUser.getLastName());
+        holder.nameTextView.setText(match.getOtherUserName());
 
         // Set profile image
-        if (otherUser.getProfileImage() != null && !otherUser.getProfileImage().isEmpty()) {
+        if (match.getThumbnail() != null && !match.getThumbnail().isEmpty()) {
             Glide.with(context)
-                    .load(otherUser.getProfileImage())
+                    .load(match.getThumbnail())
                     .placeholder(R.drawable.default_profile)
                     .into(holder.profileImageView);
         } else {
             holder.profileImageView.setImageResource(R.drawable.default_profile);
         }
 
+        bindLastMessage(holder, match);
+    }
+
+    private void bindLastMessage(MatchViewHolder holder, MatchSummary match) {
         // Set last message
         if (match.getLastMessage() != null) {
             holder.lastMessageTextView.setText(match.getLastMessage());
@@ -76,9 +117,16 @@ public class MatchAdapter extends RecyclerView.Adapter<MatchAdapter.MatchViewHol
         }
     }
 
-    @Override
-    public int getItemCount() {
-        return matches.size();
+    private static boolean sameProfile(MatchSummary a, MatchSummary b) {
+        return Objects.equals(a.getOtherUserId(), b.getOtherUserId())
+                && Objects.equals(a.getFirstName(), b.getFirstName())
+                && Objects.equals(a.getLastName(), b.getLastName())
+                && Objects.equals(a.getThumbnail(), b.getThumbnail());
+    }
+
+    private static boolean sameLastMessage(MatchSummary a, MatchSummary b) {
+        return Objects.equals(a.getLastMessage(), b.getLastMessage())
+                && Objects.equals(a.getLastMessageTimestamp(), b.getLastMessageTimestamp());
     }
 
     public class MatchViewHolder extends RecyclerView.ViewHolder implements View.OnClickListener {
@@ -107,4 +155,4 @@ public class MatchAdapter extends RecyclerView.Adapter<MatchAdapter.MatchViewHol
             }
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,59 @@
+package com.ensias.essudatingapp;
+
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.database.DatabaseReference;
+import com.google.firebase.database.ServerValue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Creates matches for both the home screen and the profile screen.
+ *
+ * The match ID is derived from the two user IDs, so both users liking each other at the
+ * same time land on the same record instead of creating two. The match fields, both
+ * users' back-references and both users' MatchSummary go out in one multi-path update,
+ * written field by field so an existing match keeps its messages.
+ */
+public class MatchService {
+
+    private final DatabaseReference mDatabase;
+
+    public MatchService(DatabaseReference mDatabase) {
+        this.mDatabase = mDatabase;
+    }
+
+    // Same ID whichever of the two users asks
+    public static String matchId(String userA, String userB) {
+        return userA.compareTo(userB) < 0 ? userA + "_" + userB : userB + "_" + userA;
+    }
+
+    // Cards already on the device make this a single write; a null card is read first
+    public Task<Void> createMatch(String currentUserId, String matchedUserId,
+                                  MatchSummaries.Card knownCurrentCard, MatchSummaries.Card knownMatchedCard) {
+        String matchId = matchId(currentUserId, matchedUserId);
+        boolean currentFirst = currentUserId.compareTo(matchedUserId) < 0;
+
+        // Names and pictures for the summaries
+        Task<MatchSummaries.Card> currentCard = knownCurrentCard != null
+                ? Tasks.forResult(knownCurrentCard) : MatchSummaries.readCard(mDatabase, currentUserId);
+        Task<MatchSummaries.Card> matchedCard = knownMatchedCard != null
+                ? Tasks.forResult(knownMatchedCard) : MatchSummaries.readCard(mDatabase, matchedUserId);
+
+        return Tasks.whenAllComplete(currentCard, matchedCard).continueWithTask(cards -> {
+            Map<String, Object> updates = new HashMap<>();
+            updates.put("matches/" + matchId + "/user1", currentFirst ? currentUserId : matchedUserId);
+            updates.put("matches/" + matchId + "/user2", currentFirst ? matchedUserId : currentUserId);
+            updates.put("matches/" + matchId + "/timestamp", ServerValue.TIMESTAMP);
+            updates.put("users/" + currentUserId + "/matches/" + matchId, true);
+            updates.put("users/" + matchedUserId + "/matches/" + matchId, true);
+            MatchSummaries.putSummary(updates, currentUserId, matchId, matchedUserId, matchedCard.getResult(),
+                    ServerValue.TIMESTAMP);
+            MatchSummaries.putSummary(updates, matchedUserId, matchId, currentUserId, currentCard.getResult(),
+                    ServerValue.TIMESTAMP);
+
+            return mDatabase.updateChildren(updates);
+        });
+    }
+}
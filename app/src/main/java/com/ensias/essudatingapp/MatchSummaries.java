@@ -0,0 +1,155 @@
+package com.ensias.essudatingapp;
+
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseReference;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per-user match summaries at userMatches/{uid}/{matchId}, see MatchSummary.
+ *
+ * Both users' summaries are written with the match, the last message fields are updated
+ * on every send and the name and picture with every profile edit. Matches created before
+ * the summaries existed are filled in once per user by migrateIfNeeded.
+ */
+public class MatchSummaries {
+
+    public static final String NODE = "userMatches";
+    public static final String META_NODE = "userMatchesMeta";
+
+    // Bump when the summary layout changes so existing users rebuild theirs
+    static final int VERSION = 1;
+
+    // The fields of a user a summary shows
+    public static class Card {
+        final String firstName;
+        final String lastName;
+        final String thumbnail;
+
+        public Card(String firstName, String lastName, String thumbnail) {
+            this.firstName = firstName;
+            this.lastName = lastName;
+            this.thumbnail = thumbnail;
+        }
+
+        public static Card of(User user) {
+            return new Card(user.getFirstName(), user.getLastName(), user.getProfileImage());
+        }
+    }
+
+    // The card fields of users/{uid}, read without downloading the whole record;
+    // fields that cannot be read are left null
+    public static Task<Card> readCard(DatabaseReference root, String userId) {
+        DatabaseReference userRef = root.child("users").child(userId);
+        Task<DataSnapshot> firstName = userRef.child("firstName").get();
+        Task<DataSnapshot> lastName = userRef.child("lastName").get();
+        Task<DataSnapshot> profileImage = userRef.child("profileImage").get();
+        return Tasks.whenAllComplete(firstName, lastName, profileImage).continueWith(reads ->
+                new Card((String) value(firstName), (String) value(lastName), (String) value(profileImage)));
+    }
+
+    // Adds the summary of a match, as seen by ownerId, to a root-level multi-path update.
+    // card is the other user's.
+    public static void putSummary(Map<String, Object> updates, String ownerId, String matchId, String otherUserId,
+                                  Card card, Object timestamp) {
+        String path = NODE + "/" + ownerId + "/" + matchId + "/";
+        updates.put(path + "otherUserId", otherUserId);
+        updates.put(path + "firstName", card.firstName);
+        updates.put(path + "lastName", card.lastName);
+        updates.put(path + "thumbnail", card.thumbnail);
+        updates.put(path + "timestamp", timestamp);
+    }
+
+    public static void putLastMessage(Map<String, Object> updates, String ownerId, String matchId,
+                                      String text, Object timestamp) {
+        String path = NODE + "/" + ownerId + "/" + matchId + "/";
+        updates.put(path + "lastMessage", text);
+        updates.put(path + "lastMessageTimestamp", timestamp);
+    }
+
+    // Adds a profile edit to the summary every match partner holds of this user.
+    // ownSummaries is userMatches/{userId}, which lists those partners.
+    public static void putProfile(Map<String, Object> updates, DataSnapshot ownSummaries, String firstName,
+                                  String lastName, String thumbnail) {
+        for (DataSnapshot summarySnapshot : ownSummaries.getChildren()) {
+            String otherUserId = summarySnapshot.child("otherUserId").getValue(String.class);
+            if (otherUserId == null) continue;
+
+            String path = NODE + "/" + otherUserId + "/" + summarySnapshot.getKey() + "/";
+            updates.put(path + "firstName", firstName);
+            updates.put(path + "lastName", lastName);
+            updates.put(path + "thumbnail", thumbnail);
+        }
+    }
+
+    // Builds this user's summaries from the legacy users/{uid}/matches list once per version
+    public static void migrateIfNeeded(DatabaseReference root, String userId, MigrationCallback callback) {
+        root.child(META_NODE).child(userId).child("version").get().addOnCompleteListener(versionTask -> {
+            Long version = versionTask.isSuccessful() ? versionTask.getResult().getValue(Long.class) : null;
+            if (!versionTask.isSuccessful() || (version != null && version >= VERSION)) {
+                callback.onComplete(versionTask.isSuccessful());
+                return;
+            }
+            backfill(root, userId, callback);
+        });
+    }
+
+    private static void backfill(DatabaseReference root, String userId, MigrationCallback callback) {
+        root.child("users").child(userId).child("matches").get().addOnCompleteListener(matchesTask -> {
+            if (!matchesTask.isSuccessful()) {
+                callback.onComplete(false);
+                return;
+            }
+
+            // Match fields one by one, so the message history under matches/{id} is not downloaded
+            List<String> matchIds = new ArrayList<>();
+            List<Task<DataSnapshot>> reads = new ArrayList<>();
+            for (DataSnapshot matchSnapshot : matchesTask.getResult().getChildren()) {
+                DatabaseReference matchRef = root.child("matches").child(matchSnapshot.getKey());
+                matchIds.add(matchSnapshot.getKey());
+                reads.add(matchRef.child("user1").get());
+                reads.add(matchRef.child("user2").get());
+                reads.add(matchRef.child("timestamp").get());
+                reads.add(matchRef.child("lastMessage").get());
+                reads.add(matchRef.child("lastMessageTimestamp").get());
+            }
+
+            Tasks.whenAllComplete(reads).addOnCompleteListener(matchReads -> {
+                List<String> otherUserIds = new ArrayList<>(matchIds.size());
+                List<Task<Card>> cards = new ArrayList<>(matchIds.size());
+                for (int i = 0; i < matchIds.size(); i++) {
+                    Object user1 = value(reads.get(i * 5));
+                    Object user2 = value(reads.get(i * 5 + 1));
+                    String otherUserId = userId.equals(user1) ? (String) user2 : (String) user1;
+                    otherUserIds.add(otherUserId);
+                    cards.add(otherUserId != null ? readCard(root, otherUserId) : Tasks.forResult(null));
+                }
+
+                Tasks.whenAllComplete(cards).addOnCompleteListener(cardReads -> {
+                    Map<String, Object> updates = new HashMap<>();
+                    for (int i = 0; i < matchIds.size(); i++) {
+                        String otherUserId = otherUserIds.get(i);
+                        if (otherUserId == null) continue;
+
+                        putSummary(updates, userId, matchIds.get(i), otherUserId,
+                                cards.get(i).getResult(), value(reads.get(i * 5 + 2)));
+                        putLastMessage(updates, userId, matchIds.get(i),
+                                (String) value(reads.get(i * 5 + 3)), value(reads.get(i * 5 + 4)));
+                    }
+                    updates.put(META_NODE + "/" + userId + "/version", VERSION);
+
+                    root.updateChildren(updates).addOnCompleteListener(task -> callback.onComplete(task.isSuccessful()));
+                });
+            });
+        });
+    }
+
+    private static Object value(Task<DataSnapshot> read) {
+        return read.isSuccessful() ? read.getResult().getValue() : null;
+    }
+}
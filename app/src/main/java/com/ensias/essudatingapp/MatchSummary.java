@@ -0,0 +1,97 @@
+package com.ensias.essudatingapp;
+
+import com.google.firebase.database.Exclude;
+
+/**
+ * One row of the matches screen, stored at userMatches/{me}/{matchId}: the other user's
+ * name and picture plus the latest message, so the list renders without touching
+ * matches/{id} or users/{other}.
+ */
+public class MatchSummary {
+
+    @Exclude
+    private String id;
+
+    private String otherUserId;
+    private String firstName;
+    private String lastName;
+    private String thumbnail;
+    private String lastMessage;
+    private Long lastMessageTimestamp;
+    private Long timestamp;
+
+    // Default constructor required for Firebase
+    public MatchSummary() {
+    }
+
+    @Exclude
+    public String getId() {
+        return id;
+    }
+
+    @Exclude
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getOtherUserId() {
+        return otherUserId;
+    }
+
+    public void setOtherUserId(String otherUserId) {
+        this.otherUserId = otherUserId;
+    }
+
+    public String getFirstName() {
+        return firstName;
+    }
+
+    public void setFirstName(String firstName) {
+        this.firstName = firstName;
+    }
+
+    public String getLastName() {
+        return lastName;
+    }
+
+    public void setLastName(String lastName) {
+        this.lastName = lastName;
+    }
+
+    public String getThumbnail() {
+        return thumbnail;
+    }
+
+    public void setThumbnail(String thumbnail) {
+        this.thumbnail = thumbnail;
+    }
+
+    public String getLastMessage() {
+        return lastMessage;
+    }
+
+    public void setLastMessage(String lastMessage) {
+        this.lastMessage = lastMessage;
+    }
+
+    public Long getLastMessageTimestamp() {
+        return lastMessageTimestamp;
+    }
+
+    public void setLastMessageTimestamp(Long lastMessageTimestamp) {
+        this.lastMessageTimestamp = lastMessageTimestamp;
+    }
+
+    public Long getTimestamp() {
+        return timestamp;
+    }
+
+    public void setTimestamp(Long timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    @Exclude
+    public String getOtherUserName() {
+        return firstName + " " + lastName;
+    }
+}
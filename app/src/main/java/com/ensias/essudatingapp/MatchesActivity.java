@@ -6,15 +6,18 @@ import android.view.View;
 import android.widget.TextView;
 import android.widget.Toast;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.appcompat.widget.Toolbar;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.database.ChildEventListener;
 import com.google.firebase.database.DataSnapshot;
 import com.google.firebase.database.DatabaseError;
 import com.google.firebase.database.DatabaseReference;
 import com.google.firebase.database.FirebaseDatabase;
+import com.google.firebase.database.Query;
 import com.google.firebase.database.ValueEventListener;
 
 import java.util.ArrayList;
@@ -25,11 +28,13 @@ public class MatchesActivity extends AppCompatActivity implements MatchAdapter.O
     private RecyclerView matchesRecyclerView;
     private TextView noMatchesTextView;
     private MatchAdapter matchAdapter;
-    private List<Match> matches;
+    private List<MatchSummary> matches;
 
     private FirebaseAuth mAuth;
     private DatabaseReference mDatabase;
     private String currentUserId;
+    private Query matchesQuery;
+    private ChildEventListener matchesListener;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -53,7 +58,7 @@ public class MatchesActivity extends AppCompatActivity implements MatchAdapter.O
 
         // Setup RecyclerView
         matches = new ArrayList<>();
-        matchAdapter = new MatchAdapter(this, matches, this);
+        matchAdapter = new MatchAdapter(this, this);
         matchesRecyclerView.setLayoutManager(new LinearLayoutManager(this));
         matchesRecyclerView.setAdapter(matchAdapter);
 
@@ -62,80 +67,95 @@ public class MatchesActivity extends AppCompatActivity implements MatchAdapter.O
     }
 
     private void loadMatches() {
-        mDatabase.child("users").child(currentUserId).child("matches")
-                .addValueEventListener(new ValueEventListener() {
-                    @Override
-                    public void onDataChange(@NonNull DataSnapshot dataSnapshot) {
-                        if (dataSnapshot.exists() && dataSnapshot.getChildrenCount() > 0) {
-                            matches.clear();
-
-                            for (DataSnapshot matchSnapshot : dataSnapshot.getChildren()) {
-                                String matchId = matchSnapshot.getKey();
-
-                                mDatabase.child("matches").child(matchId)
-                                        .addListenerForSingleValueEvent(new ValueEventListener() {
-                                            @Override
-                                            public void onDataChange(@NonNull DataSnapshot matchDataSnapshot) {
-                                                if (matchDataSnapshot.exists()) {
-                                                    Match match = matchDataSnapshot.getValue(Match.class);
-                                                    match.setId(matchId);
-
-                                                    // Get the other user's ID
-                                                    String otherUserId;
-                                                    if (match.getUser1().equals(currentUserId)) {
-                                                        otherUserId = match.getUser2();
-                                                    } else {
-                                                        otherUserId = match.getUser1();
-                                                    }
-
-                                                    // Get the other user's info
-                                                    mDatabase.child("users").child(otherUserId)
-                                                            .addListenerForSingleValueEvent(new ValueEventListener() {
-                                                                @Override
-                                                                public void onDataChange(@NonNull DataSnapshot userSnapshot) {
-                                                                    if (userSnapshot.exists()) {
-                                                                        User user = userSnapshot.getValue(User.class);
-                                                                        user.setId(otherUserId);
-                                                                        match.setOtherUser(user);
-
-                                                                        // Add to list and update adapter
-                                                                        matches.add(match);
-                                                                        matchAdapter.notifyDataSetChanged();
-
-                                                                        // Show/hide no matches text
-                                                                        updateUI();
-                                                                    }
-                                                                }
-
-                                                                @Override
-                                                                public void onCancelled(@NonNull DatabaseError databaseError) {
-                                                                    Toast.makeText(MatchesActivity.this, "Failed to load user data: " + databaseError.getMessage(),
-                                                                            Toast.LENGTH_SHORT).show();
-                                                                }
-                                                            });
-                                                }
-                                            }
-
-                                            @Override
-                                            public void onCancelled(@NonNull DatabaseError databaseError) {
-                                                Toast.makeText(MatchesActivity.this, "Failed to load match data: " + databaseError.getMessage(),
-                                                        Toast.LENGTH_SHORT).show();
-                                            }
-                                        });
-                            }
-                        } else {
-                            matches.clear();
-                            matchAdapter.notifyDataSetChanged();
-                            updateUI();
-                        }
-                    }
-
-                    @Override
-                    public void onCancelled(@NonNull DatabaseError databaseError) {
-                        Toast.makeText(MatchesActivity.this, "Failed to load matches: " + databaseError.getMessage(),
-                                Toast.LENGTH_SHORT).show();
-                    }
-                });
+        // Older accounts get their summaries built once, then the list is a single query
+        MatchSummaries.migrateIfNeeded(mDatabase, currentUserId, success -> listenForMatches());
+    }
+
+    // Applies each added, changed or removed summary to the list by key instead of reloading it
+    private void listenForMatches() {
+        matchesQuery = mDatabase.child(MatchSummaries.NODE).child(currentUserId);
+        matchesListener = new ChildEventListener() {
+            @Override
+            public void onChildAdded(@NonNull DataSnapshot snapshot, @Nullable String previousChildName) {
+                MatchSummary match = toSummary(snapshot);
+                if (match == null || indexOf(match.getId()) != -1) return;
+
+                // Right after its predecessor in query order, at the end if that one was skipped
+                int previous = previousChildName == null ? -1 : indexOf(previousChildName);
+                int position = previousChildName == null ? 0 : previous == -1 ? matches.size() : previous + 1;
+                matches.add(position, match);
+                submitMatches();
+            }
+
+            @Override
+            public void onChildChanged(@NonNull DataSnapshot snapshot, @Nullable String previousChildName) {
+                MatchSummary match = toSummary(snapshot);
+                int position = indexOf(snapshot.getKey());
+                if (match == null) return;
+
+                if (position == -1) {
+                    // Was incomplete when added
+                    matches.add(match);
+                } else {
+                    matches.set(position, match);
+                }
+                submitMatches();
+            }
+
+            @Override
+            public void onChildRemoved(@NonNull DataSnapshot snapshot) {
+                int position = indexOf(snapshot.getKey());
+                if (position == -1) return;
+
+                matches.remove(position);
+                submitMatches();
+            }
+
+            @Override
+            public void onChildMoved(@NonNull DataSnapshot snapshot, @Nullable String previousChildName) {}
+
+            @Override
+            public void onCancelled(@NonNull DatabaseError databaseError) {
+                Toast.makeText(MatchesActivity.this, "Failed to load matches: " + databaseError.getMessage(),
+                        Toast.LENGTH_SHORT).show();
+            }
+        };
+        matchesQuery.addChildEventListener(matchesListener);
+
+        // Value events fire after the initial child events, so this covers the empty list case
+        matchesQuery.addListenerForSingleValueEvent(new ValueEventListener() {
+            @Override
+            public void onDataChange(@NonNull DataSnapshot dataSnapshot) {
+                updateUI();
+            }
+
+            @Override
+            public void onCancelled(@NonNull DatabaseError databaseError) {}
+        });
+    }
+
+    // The adapter diffs a snapshot of the list off the main thread and rebinds only what changed
+    private void submitMatches() {
+        matchAdapter.submitList(new ArrayList<>(matches));
+        updateUI();
+    }
+
+    private MatchSummary toSummary(DataSnapshot snapshot) {
+        MatchSummary match = snapshot.getValue(MatchSummary.class);
+        if (match == null || match.getOtherUserId() == null) {
+            return null;
+        }
+        match.setId(snapshot.getKey());
+        return match;
+    }
+
+    private int indexOf(String matchId) {
+        for (int i = 0; i < matches.size(); i++) {
+            if (matches.get(i).getId().equals(matchId)) {
+                return i;
+            }
+        }
+        return -1;
     }
 
     private void updateUI() {
@@ -150,16 +170,24 @@ public class MatchesActivity extends AppCompatActivity implements MatchAdapter.O
 
     @Override
     public void onMatchClick(int position) {
-        Match match = matches.get(position);
+        MatchSummary match = matchAdapter.getCurrentList().get(position);
 
         // Open chat activity
         Intent intent = new Intent(MatchesActivity.this, ChatActivity.class);
         intent.putExtra("matchId", match.getId());
-        intent.putExtra("otherUserId", match.getOtherUser().getId());
-        intent.putExtra("otherUserName", match.getOtherUser().getFirstName() + " " + match.getOtherUser().getLastName());
+        intent.putExtra("otherUserId", match.getOtherUserId());
+        intent.putExtra("otherUserName", match.getOtherUserName());
         startActivity(intent);
     }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (matchesQuery != null) {
+            matchesQuery.removeEventListener(matchesListener);
+        }
+    }
+
     @Override
     public boolean onSupportNavigateUp() {
         onBackPressed();
@@ -1,12 +1,30 @@
 package com.ensias.essudatingapp;
 
+import com.google.firebase.database.Exclude;
+
 public class Message {
 
+    // Delivery state shown on outgoing messages, not stored under the message itself
+    public static final int STATUS_PENDING = 0;
+    public static final int STATUS_SENT = 1;
+    public static final int STATUS_DELIVERED = 2;
+    // Rejected by the server, see WriteRetry; never moves on
+    public static final int STATUS_FAILED = -1;
+
+    @Exclude
+    private String id;
+
+    @Exclude
+    private int status = STATUS_SENT;
+
     private String senderId;
     private String receiverId;
     private String text;
     private Long timestamp;
 
+    // Set per message by older clients; delivery is now tracked by matches/{id}/deliveredUpTo
+    private Boolean delivered;
+
     // Default constructor required for Firebase
     public Message() {
     }
@@ -18,6 +36,17 @@ public class Message {
         this.timestamp = timestamp;
     }
 
+    // Push key of the message under matches/{id}/messages
+    @Exclude
+    public String getId() {
+        return id;
+    }
+
+    @Exclude
+    public void setId(String id) {
+        this.id = id;
+    }
+
     public String getSenderId() {
         return senderId;
     }
@@ -49,4 +78,27 @@ public class Message {
     public void setTimestamp(Long timestamp) {
         this.timestamp = timestamp;
     }
+
+    public Boolean getDelivered() {
+        return delivered;
+    }
+
+    public void setDelivered(Boolean delivered) {
+        this.delivered = delivered;
+    }
+
+    @Exclude
+    public boolean isDelivered() {
+        return Boolean.TRUE.equals(delivered);
+    }
+
+    @Exclude
+    public int getStatus() {
+        return status;
+    }
+
+    @Exclude
+    public void setStatus(int status) {
+        this.status = status;
+    }
 }
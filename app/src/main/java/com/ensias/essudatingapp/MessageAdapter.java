@@ -9,23 +9,135 @@ import androidx.annotation.NonNull;
 import androidx.recyclerview.widget.RecyclerView;
 
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
-
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Chat rows keyed by message push key.
+ *
+ * The chat is fed one child event at a time, so rows are applied as keyed edits with
+ * positional notifications: an appended or edited message costs the same whatever the
+ * length of the conversation. Stable IDs keep rows and their views across updates.
+ */
 public class MessageAdapter extends RecyclerView.Adapter<MessageAdapter.MessageViewHolder> {
 
     private static final int VIEW_TYPE_SENT = 1;
     private static final int VIEW_TYPE_RECEIVED = 2;
 
+    // Only the text changed, e.g. an edited message
+    private static final Object PAYLOAD_TEXT = new Object();
+
+    // Only the delivery state of an outgoing message changed
+    private static final Object PAYLOAD_STATUS = new Object();
+
     private Context context;
-    private List<Message> messages;
+    private List<Message> messages = new ArrayList<>();
+    private final Map<String, Integer> positions = new HashMap<>();
     private String currentUserId;
+    private final StableIds stableIds = new StableIds();
 
-    public MessageAdapter(Context context, List<Message> messages, String currentUserId) {
+    public MessageAdapter(Context context, String currentUserId) {
         this.context = context;
-        this.messages = messages;
         this.currentUserId = currentUserId;
+        setHasStableIds(true);
+    }
+
+    // Adds a new message at the bottom; a key already shown is treated as an update
+    public void append(Message message) {
+        if (positions.containsKey(message.getId())) {
+            update(message);
+            return;
+        }
+        messages.add(message);
+        positions.put(message.getId(), messages.size() - 1);
+        notifyItemInserted(messages.size() - 1);
+    }
+
+    // Inserts an older page above everything shown, oldest first
+    public void prepend(List<Message> page) {
+        if (page.isEmpty()) {
+            return;
+        }
+        messages.addAll(0, page);
+        for (int i = 0; i < messages.size(); i++) {
+            positions.put(messages.get(i).getId(), i);
+        }
+        notifyItemRangeInserted(0, page.size());
+    }
+
+    // Push key of the oldest message shown, where the next older page ends
+    public String getOldestId() {
+        return messages.isEmpty() ? null : messages.get(0).getId();
+    }
+
+    public void update(Message message) {
+        Integer position = positions.get(message.getId());
+        if (position == null) {
+            return;
+        }
+
+        // Delivery state only moves forward, whichever of the server and the Outbox reports first
+        Message old = messages.get(position);
+        message.setStatus(Math.max(old.getStatus(), message.getStatus()));
+        messages.set(position, message);
+        if (!Objects.equals(old.getTimestamp(), message.getTimestamp())) {
+            notifyItemChanged(position);
+        } else {
+            if (!Objects.equals(old.getText(), message.getText())) {
+                notifyItemChanged(position, PAYLOAD_TEXT);
+            }
+            if (old.getStatus() != message.getStatus()) {
+                notifyItemChanged(position, PAYLOAD_STATUS);
+            }
+        }
+    }
+
+    public void setStatus(String messageId, int status) {
+        Integer position = positions.get(messageId);
+        if (position == null) {
+            return;
+        }
+
+        Message message = messages.get(position);
+        if (status > message.getStatus() || status == Message.STATUS_FAILED) {
+            message.setStatus(status);
+            notifyItemChanged(position, PAYLOAD_STATUS);
+        }
+    }
+
+    // The other user's delivery cursor: every message sent from here up to that key has reached them
+    public void setDeliveredUpTo(String pushKey) {
+        for (int i = 0; i < messages.size(); i++) {
+            Message message = messages.get(i);
+            if (message.getStatus() == Message.STATUS_SENT && currentUserId.equals(message.getSenderId())
+                    && message.getId().compareTo(pushKey) <= 0) {
+                message.setStatus(Message.STATUS_DELIVERED);
+                notifyItemChanged(i, PAYLOAD_STATUS);
+            }
+        }
+    }
+
+    public void remove(String messageId) {
+        Integer position = positions.remove(messageId);
+        if (position == null) {
+            return;
+        }
+
+        messages.remove((int) position);
+        for (int i = position; i < messages.size(); i++) {
+            positions.put(messages.get(i).getId(), i);
+        }
+        notifyItemRemoved(position);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return stableIds.idFor(messages.get(position).getId());
     }
 
     @NonNull
@@ -42,6 +154,20 @@ public class MessageAdapter extends RecyclerView.Adapter<MessageAdapter.MessageV
         return new MessageViewHolder(view);
     }
 
+    @Override
+    public void onBindViewHolder(@NonNull MessageViewHolder holder, int position, @NonNull List<Object> payloads) {
+        if (payloads.isEmpty()) {
+            onBindViewHolder(holder, position);
+            return;
+        }
+        if (payloads.contains(PAYLOAD_TEXT)) {
+            holder.messageTextView.setText(messages.get(position).getText());
+        }
+        if (payloads.contains(PAYLOAD_STATUS)) {
+            bindTime(holder, messages.get(position));
+        }
+    }
+
     @Override
     public void onBindViewHolder(@NonNull MessageViewHolder holder, int position) {
         Message message = messages.get(position);
@@ -49,9 +175,30 @@ public class MessageAdapter extends RecyclerView.Adapter<MessageAdapter.MessageV
         // Set message text
         holder.messageTextView.setText(message.getText());
 
-        // Format and set timestamp
+        bindTime(holder, message);
+    }
+
+    // Time of the message, followed by its delivery state on outgoing messages
+    private void bindTime(MessageViewHolder holder, Message message) {
         SimpleDateFormat sdf = new SimpleDateFormat("HH:mm", Locale.getDefault());
         String formattedTime = sdf.format(new Date(message.getTimestamp()));
+
+        if (message.getSenderId().equals(currentUserId)) {
+            switch (message.getStatus()) {
+                case Message.STATUS_PENDING:
+                    formattedTime += " \u00b7 Sending";
+                    break;
+                case Message.STATUS_SENT:
+                    formattedTime += " \u2713";
+                    break;
+                case Message.STATUS_DELIVERED:
+                    formattedTime += " \u2713\u2713";
+                    break;
+                case Message.STATUS_FAILED:
+                    formattedTime += " \u00b7 Not sent";
+                    break;
+            }
+        }
         holder.timeTextView.setText(formattedTime);
     }
 
@@ -0,0 +1,244 @@
+package com.ensias.essudatingapp;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Local copy of chat history, so a conversation opens from disk and only messages newer
+ * than the last stored one are fetched.
+ *
+ * Rows are keyed by (match ID, push key) and carry the delivery status, so messages still
+ * waiting in the Outbox survive a restart. Push keys sort by creation time, so the newest
+ * stored key is the sync cursor and pages are read in key order; timestamps are indexed
+ * for time-based queries. All database work runs on one background thread in submission
+ * order; reads are delivered on the main thread.
+ *
+ * Per conversation it also keeps the last matches/{id}/editedAt seen, so stored rows are
+ * re-read from the server only after a message was edited or deleted, see ChatActivity.
+ */
+public class MessageStore extends SQLiteOpenHelper {
+
+    private static final String DATABASE_NAME = "messages.db";
+    private static final int DATABASE_VERSION = 3;
+
+    private static final String TABLE = "messages";
+    private static final String COL_MATCH_ID = "match_id";
+    private static final String COL_PUSH_KEY = "push_key";
+    private static final String COL_SENDER_ID = "sender_id";
+    private static final String COL_RECEIVER_ID = "receiver_id";
+    private static final String COL_TEXT = "text";
+    private static final String COL_TIMESTAMP = "timestamp";
+    private static final String COL_STATUS = "status";
+
+    private static final String SYNC_TABLE = "sync_state";
+    private static final String COL_EDITED_AT = "edited_at";
+
+    private static final String[] COLUMNS = {
+            COL_PUSH_KEY, COL_SENDER_ID, COL_RECEIVER_ID, COL_TEXT, COL_TIMESTAMP, COL_STATUS, COL_MATCH_ID};
+
+    private static MessageStore instance;
+
+    public interface OnMessagesLoadedListener {
+        // Oldest first
+        void onLoaded(List<Message> messages);
+    }
+
+    public interface OnPendingLoadedListener {
+        // In send order
+        void onLoaded(List<Outbox.Entry> entries);
+    }
+
+    public interface OnEditedAtLoadedListener {
+        // 0 when nothing was recorded for the conversation
+        void onLoaded(long editedAt);
+    }
+
+    private final Handler ioHandler;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    public static synchronized MessageStore getInstance(Context context) {
+        if (instance == null) {
+            instance = new MessageStore(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private MessageStore(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+
+        HandlerThread ioThread = new HandlerThread("MessageStore");
+        ioThread.start();
+        ioHandler = new Handler(ioThread.getLooper());
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE + " ("
+                + COL_MATCH_ID + " TEXT NOT NULL, "
+                + COL_PUSH_KEY + " TEXT NOT NULL, "
+                + COL_SENDER_ID + " TEXT, "
+                + COL_RECEIVER_ID + " TEXT, "
+                + COL_TEXT + " TEXT, "
+                + COL_TIMESTAMP + " INTEGER, "
+                + COL_STATUS + " INTEGER NOT NULL DEFAULT " + Message.STATUS_SENT + ", "
+                + "PRIMARY KEY (" + COL_MATCH_ID + ", " + COL_PUSH_KEY + "))");
+        db.execSQL("CREATE INDEX messages_match_timestamp ON " + TABLE
+                + " (" + COL_MATCH_ID + ", " + COL_TIMESTAMP + ")");
+        createSyncTable(db);
+    }
+
+    private static void createSyncTable(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + SYNC_TABLE + " ("
+                + COL_MATCH_ID + " TEXT PRIMARY KEY, "
+                + COL_EDITED_AT + " INTEGER NOT NULL)");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // Unsent messages only exist here, so the table is migrated rather than rebuilt
+        if (oldVersion < 2) {
+            db.execSQL("ALTER TABLE " + TABLE + " ADD COLUMN " + COL_STATUS
+                    + " INTEGER NOT NULL DEFAULT " + Message.STATUS_SENT);
+        }
+        if (oldVersion < 3) {
+            createSyncTable(db);
+        }
+    }
+
+    // The newest stored page of a conversation
+    public void loadLatest(String matchId, int limit, OnMessagesLoadedListener listener) {
+        query(COL_MATCH_ID + " = ?", new String[]{matchId}, limit, listener);
+    }
+
+    // The stored page right before the given push key
+    public void loadBefore(String matchId, String pushKey, int limit, OnMessagesLoadedListener listener) {
+        query(COL_MATCH_ID + " = ? AND " + COL_PUSH_KEY + " < ?", new String[]{matchId, pushKey}, limit, listener);
+    }
+
+    public void save(String matchId, Message message) {
+        saveAll(matchId, Collections.singletonList(message));
+    }
+
+    public void saveAll(String matchId, List<Message> messages) {
+        if (messages.isEmpty()) {
+            return;
+        }
+        ioHandler.post(() -> {
+            SQLiteDatabase db = getWritableDatabase();
+            db.beginTransaction();
+            try {
+                for (Message message : messages) {
+                    ContentValues values = new ContentValues();
+                    values.put(COL_MATCH_ID, matchId);
+                    values.put(COL_PUSH_KEY, message.getId());
+                    values.put(COL_SENDER_ID, message.getSenderId());
+                    values.put(COL_RECEIVER_ID, message.getReceiverId());
+                    values.put(COL_TEXT, message.getText());
+                    values.put(COL_TIMESTAMP, message.getTimestamp());
+                    values.put(COL_STATUS, message.getStatus());
+                    db.insertWithOnConflict(TABLE, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        });
+    }
+
+    public void setStatus(String matchId, String pushKey, int status) {
+        ioHandler.post(() -> {
+            ContentValues values = new ContentValues();
+            values.put(COL_STATUS, status);
+            getWritableDatabase().update(TABLE, values,
+                    COL_MATCH_ID + " = ? AND " + COL_PUSH_KEY + " = ?", new String[]{matchId, pushKey});
+        });
+    }
+
+    // The other user's delivery cursor moved: what senderId sent up to pushKey has reached them
+    public void markDeliveredUpTo(String matchId, String senderId, String pushKey) {
+        ioHandler.post(() -> {
+            ContentValues values = new ContentValues();
+            values.put(COL_STATUS, Message.STATUS_DELIVERED);
+            getWritableDatabase().update(TABLE, values,
+                    COL_MATCH_ID + " = ? AND " + COL_SENDER_ID + " = ? AND " + COL_PUSH_KEY + " <= ? AND "
+                            + COL_STATUS + " = ?",
+                    new String[]{matchId, senderId, pushKey, String.valueOf(Message.STATUS_SENT)});
+        });
+    }
+
+    public void loadEditedAt(String matchId, OnEditedAtLoadedListener listener) {
+        ioHandler.post(() -> {
+            long editedAt = 0L;
+            try (Cursor cursor = getReadableDatabase().query(SYNC_TABLE, new String[]{COL_EDITED_AT},
+                    COL_MATCH_ID + " = ?", new String[]{matchId}, null, null, null)) {
+                if (cursor.moveToFirst()) {
+                    editedAt = cursor.getLong(0);
+                }
+            }
+            long loaded = editedAt;
+            mainHandler.post(() -> listener.onLoaded(loaded));
+        });
+    }
+
+    public void setEditedAt(String matchId, long editedAt) {
+        ioHandler.post(() -> {
+            ContentValues values = new ContentValues();
+            values.put(COL_MATCH_ID, matchId);
+            values.put(COL_EDITED_AT, editedAt);
+            getWritableDatabase().insertWithOnConflict(SYNC_TABLE, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+        });
+    }
+
+    // Messages a user wrote locally that are not yet acknowledged, across all conversations, for the Outbox
+    public void loadPending(String senderId, OnPendingLoadedListener listener) {
+        ioHandler.post(() -> {
+            List<Outbox.Entry> entries = new ArrayList<>();
+            try (Cursor cursor = getReadableDatabase().query(TABLE, COLUMNS,
+                    COL_STATUS + " = ? AND " + COL_SENDER_ID + " = ?",
+                    new String[]{String.valueOf(Message.STATUS_PENDING), senderId},
+                    null, null, COL_PUSH_KEY + " ASC")) {
+                while (cursor.moveToNext()) {
+                    entries.add(new Outbox.Entry(cursor.getString(6), toMessage(cursor)));
+                }
+            }
+            mainHandler.post(() -> listener.onLoaded(entries));
+        });
+    }
+
+    public void delete(String matchId, String pushKey) {
+        ioHandler.post(() -> getWritableDatabase().delete(TABLE,
+                COL_MATCH_ID + " = ? AND " + COL_PUSH_KEY + " = ?", new String[]{matchId, pushKey}));
+    }
+
+    private void query(String selection, String[] args, int limit, OnMessagesLoadedListener listener) {
+        ioHandler.post(() -> {
+            List<Message> messages = new ArrayList<>(limit);
+            try (Cursor cursor = getReadableDatabase().query(TABLE, COLUMNS,
+                    selection, args, null, null, COL_PUSH_KEY + " DESC", String.valueOf(limit))) {
+                while (cursor.moveToNext()) {
+                    messages.add(toMessage(cursor));
+                }
+            }
+            Collections.reverse(messages);
+            mainHandler.post(() -> listener.onLoaded(messages));
+        });
+    }
+
+    private static Message toMessage(Cursor cursor) {
+        Message message = new Message(cursor.getString(1), cursor.getString(2), cursor.getString(3),
+                cursor.getLong(4));
+        message.setId(cursor.getString(0));
+        message.setStatus(cursor.getInt(5));
+        return message;
+    }
+}
@@ -0,0 +1,8 @@
+package com.ensias.essudatingapp;
+
+/**
+ * Completion of a per-user data migration, see DiscoveryIndex and MatchSummaries.
+ */
+public interface MigrationCallback {
+    void onComplete(boolean success);
+}
@@ -0,0 +1,186 @@
+package com.ensias.essudatingapp;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import com.google.firebase.database.DatabaseReference;
+import com.google.firebase.database.FirebaseDatabase;
+import com.google.firebase.database.ServerValue;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Queue of outgoing chat messages.
+ *
+ * send() assigns the push key up front, stores the message in the MessageStore as pending
+ * and returns it at once so the chat can show it before the network is involved. Messages
+ * are then written one at a time in send order; a failed write is retried with exponential
+ * backoff, and one the server rejects for good is marked as not sent, see WriteRetry.
+ * Pending messages are read back from the store on start, so nothing typed offline is lost.
+ *
+ * There is one outbox per signed-in user, started with the home screen so messages left
+ * from the last session go out without a chat being opened.
+ */
+public class Outbox {
+
+    private static Outbox instance;
+
+    public interface Listener {
+        void onStatusChanged(String matchId, String messageId, int status);
+    }
+
+    public static class Entry {
+        final String matchId;
+        final Message message;
+
+        Entry(String matchId, Message message) {
+            this.matchId = matchId;
+            this.message = message;
+        }
+    }
+
+    private final String userId;
+    private final DatabaseReference mDatabase;
+    private final MessageStore messageStore;
+    private final ArrayDeque<Entry> pending = new ArrayDeque<>();
+    private final Set<String> pendingIds = new HashSet<>();
+    private final List<Listener> listeners = new ArrayList<>();
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable drainRunnable = this::drain;
+    private final WriteRetry retry = new WriteRetry(handler, drainRunnable);
+
+    private boolean loaded;
+    private boolean stopped;
+    private boolean inFlight;
+
+    // One outbox per signed-in user for the whole process
+    public static synchronized Outbox getInstance(Context context, String userId) {
+        if (instance == null || !instance.userId.equals(userId)) {
+            if (instance != null) {
+                instance.shutdown();
+            }
+            instance = new Outbox(context.getApplicationContext(), userId);
+        }
+        return instance;
+    }
+
+    // Signed out; unsent messages stay in the store until this user signs in again
+    public static synchronized void release() {
+        if (instance != null) {
+            instance.shutdown();
+            instance = null;
+        }
+    }
+
+    private Outbox(Context context, String userId) {
+        this.userId = userId;
+        this.mDatabase = FirebaseDatabase.getInstance().getReference();
+        this.messageStore = MessageStore.getInstance(context);
+
+        messageStore.loadPending(userId, entries -> {
+            if (stopped) return;
+
+            // Older than anything sent while the store was being read
+            for (int i = entries.size() - 1; i >= 0; i--) {
+                Entry entry = entries.get(i);
+                if (pendingIds.add(entry.message.getId())) {
+                    pending.addFirst(entry);
+                }
+            }
+            loaded = true;
+            drain();
+        });
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    public boolean isPending(String messageId) {
+        return pendingIds.contains(messageId);
+    }
+
+    // Returns the message as it should be shown right away
+    public Message send(String matchId, String receiverId, String text) {
+        String messageId = mDatabase.child("matches").child(matchId).child("messages").push().getKey();
+
+        Message message = new Message(userId, receiverId, text, System.currentTimeMillis());
+        message.setId(messageId);
+        message.setStatus(Message.STATUS_PENDING);
+
+        messageStore.save(matchId, message);
+        pending.add(new Entry(matchId, message));
+        pendingIds.add(messageId);
+        drain();
+        return message;
+    }
+
+    private void drain() {
+        handler.removeCallbacks(drainRunnable);
+        if (!loaded || stopped || inFlight || pending.isEmpty()) {
+            return;
+        }
+
+        Entry entry = pending.peek();
+        inFlight = true;
+
+        mDatabase.updateChildren(toUpdates(entry), (error, ref) -> {
+            inFlight = false;
+            if (stopped) return;
+
+            if (error == null) {
+                finish(entry, Message.STATUS_SENT);
+            } else if (!retry.retryLater(error)) {
+                // Rejected for good; marked as not sent and the rest of the queue goes on
+                finish(entry, Message.STATUS_FAILED);
+            }
+            // Otherwise the message stays at the head so later ones stay in order
+        });
+    }
+
+    private void finish(Entry entry, int status) {
+        pending.poll();
+        pendingIds.remove(entry.message.getId());
+        retry.reset();
+        messageStore.setStatus(entry.matchId, entry.message.getId(), status);
+        for (Listener listener : new ArrayList<>(listeners)) {
+            listener.onStatusChanged(entry.matchId, entry.message.getId(), status);
+        }
+        drain();
+    }
+
+    // Message, match and both users' match summaries in one write, stamped with server time.
+    // Message fields are set one by one so a resend after a crash keeps the delivered flag.
+    private static Map<String, Object> toUpdates(Entry entry) {
+        String matchId = entry.matchId;
+        Message message = entry.message;
+        String messagePath = "matches/" + matchId + "/messages/" + message.getId() + "/";
+
+        Map<String, Object> updates = new HashMap<>();
+        updates.put(messagePath + "senderId", message.getSenderId());
+        updates.put(messagePath + "receiverId", message.getReceiverId());
+        updates.put(messagePath + "text", message.getText());
+        updates.put(messagePath + "timestamp", ServerValue.TIMESTAMP);
+        updates.put("matches/" + matchId + "/lastMessage", message.getText());
+        updates.put("matches/" + matchId + "/lastMessageTimestamp", ServerValue.TIMESTAMP);
+        MatchSummaries.putLastMessage(updates, message.getSenderId(), matchId, message.getText(), ServerValue.TIMESTAMP);
+        MatchSummaries.putLastMessage(updates, message.getReceiverId(), matchId, message.getText(), ServerValue.TIMESTAMP);
+        return updates;
+    }
+
+    private void shutdown() {
+        stopped = true;
+        handler.removeCallbacks(drainRunnable);
+        listeners.clear();
+    }
+}
@@ -0,0 +1,92 @@
+package com.ensias.essudatingapp;
+
+import com.google.firebase.database.DataSnapshot;
+
+/**
+ * The discovery preferences of the current user, compiled once into int codes.
+ *
+ * Compatibility is checked both ways: the candidate must match these preferences, and
+ * the candidate's interestedIn must include the current user's gender. Likes on anyone
+ * else could never turn into a match.
+ *
+ * accepts() is a handful of int comparisons and allocates nothing, so it is cheap to run
+ * on every candidate of every page, on live sign-ups and on a restored deck.
+ */
+public class PreferenceFilter {
+
+    private static final int DEFAULT_MIN_AGE = 18;
+    private static final int DEFAULT_MAX_AGE = 30;
+
+    private final int minAge;
+    private final int maxAge;
+    private final String genderPreference;
+    private final String coursePreference;
+    private final int genderCode;
+    private final int courseCode;
+    private final int ownGenderCode;
+
+    public PreferenceFilter(int minAge, int maxAge, String genderPreference, String coursePreference,
+                            int ownGenderCode) {
+        this.minAge = minAge;
+        this.maxAge = maxAge;
+        this.genderPreference = genderPreference;
+        this.coursePreference = coursePreference;
+        this.genderCode = ProfileCodes.genderPreferenceCode(genderPreference);
+        this.courseCode = ProfileCodes.courseCode(coursePreference);
+        this.ownGenderCode = ownGenderCode;
+    }
+
+    // Reads users/{uid}/preferences as saved by PreferencesActivity
+    public static PreferenceFilter fromSnapshot(DataSnapshot snapshot, User currentUser) {
+        int minAge = DEFAULT_MIN_AGE;
+        int maxAge = DEFAULT_MAX_AGE;
+        String genderPreference = DiscoveryIndex.ANY;
+        String coursePreference = DiscoveryIndex.ANY;
+
+        if (snapshot.exists()) {
+            Long minAgeLong = snapshot.child("minAge").getValue(Long.class);
+            if (minAgeLong != null) minAge = minAgeLong.intValue();
+
+            Long maxAgeLong = snapshot.child("maxAge").getValue(Long.class);
+            if (maxAgeLong != null) maxAge = maxAgeLong.intValue();
+
+            String genderPref = snapshot.child("genderPreference").getValue(String.class);
+            if (genderPref != null) genderPreference = genderPref;
+
+            String coursePref = snapshot.child("coursePreference").getValue(String.class);
+            if (coursePref != null) coursePreference = coursePref;
+        }
+
+        return new PreferenceFilter(minAge, maxAge, genderPreference, coursePreference, currentUser.getGenderCode());
+    }
+
+    public boolean accepts(Candidate candidate) {
+        int age = candidate.getAge();
+        return age >= minAge && age <= maxAge
+                && (genderCode == ProfileCodes.ANY || genderCode == candidate.getGenderCode())
+                && (courseCode == ProfileCodes.ANY || courseCode == candidate.getCourseCode())
+                && (candidate.getInterestedInCode() == ProfileCodes.ANY || candidate.getInterestedInCode() == ownGenderCode);
+    }
+
+    // Identifies the slice, a saved deck or cursor is only valid for the same one
+    public int hash() {
+        return (DiscoveryIndex.genderKeyForPreference(genderPreference) + "|"
+                + DiscoveryIndex.courseKeyForPreference(coursePreference) + "|" + minAge + "|" + maxAge).hashCode();
+    }
+
+    public int getMinAge() {
+        return minAge;
+    }
+
+    public int getMaxAge() {
+        return maxAge;
+    }
+
+    public String getGenderPreference() {
+        return genderPreference;
+    }
+
+    public String getCoursePreference() {
+        return coursePreference;
+    }
+}
@@ -0,0 +1,294 @@
+package com.ensias.essudatingapp;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.util.AtomicFile;
+import android.util.Log;
+import android.util.LruCache;
+import androidx.annotation.NonNull;
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
+import com.google.firebase.database.DatabaseReference;
+import com.google.firebase.database.FirebaseDatabase;
+import com.google.firebase.database.ValueEventListener;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Process-wide cache of users/{uid} records with their profile fields.
+ *
+ * Lookups go memory LRU, then a file per user in the cache directory, then the network.
+ * Every profile write stamps users/{uid}/updatedAt, so a cached profile is shown at once
+ * and then checked against that single value; the full record is only downloaded again
+ * when it differs. Cards from the discovery deck are added unverified so opening one
+ * paints straight away.
+ */
+public class ProfileCache {
+
+    private static final String TAG = "ProfileCache";
+    private static final String DIR_NAME = "profiles";
+    private static final int FORMAT_VERSION = 1;
+
+    static final int MEMORY_ENTRIES = 100;
+    static final int DISK_ENTRIES = 300;
+
+    // Version of an entry that has not been checked against the server, e.g. built from a card
+    private static final long UNVERIFIED = -1;
+
+    private static ProfileCache instance;
+
+    public interface OnProfileListener {
+        // Called with the cached profile first, and again if the server has a newer one;
+        // null if the user does not exist
+        void onProfile(Profile profile);
+        void onError(DatabaseError error);
+    }
+
+    public static class Profile {
+        private final User user;
+        private final String bio;
+        private final String hobbies;
+        private final String relationshipGoals;
+        private final long version;
+
+        Profile(User user, String bio, String hobbies, String relationshipGoals, long version) {
+            this.user = user;
+            this.bio = bio;
+            this.hobbies = hobbies;
+            this.relationshipGoals = relationshipGoals;
+            this.version = version;
+        }
+
+        // A copy: the cached record is shared by every screen and must only change on a fetch
+        public User getUser() {
+            return new User(user);
+        }
+
+        public String getBio() {
+            return bio;
+        }
+
+        public String getHobbies() {
+            return hobbies;
+        }
+
+        public String getRelationshipGoals() {
+            return relationshipGoals;
+        }
+    }
+
+    private final DatabaseReference mDatabase;
+    private final File dir;
+    private final LruCache<String, Profile> memory = new LruCache<>(MEMORY_ENTRIES);
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Handler ioHandler;
+
+    public static synchronized ProfileCache getInstance(Context context) {
+        if (instance == null) {
+            instance = new ProfileCache(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private ProfileCache(Context context) {
+        this.mDatabase = FirebaseDatabase.getInstance().getReference();
+        this.dir = new File(context.getCacheDir(), DIR_NAME);
+
+        HandlerThread ioThread = new HandlerThread(TAG);
+        ioThread.start();
+        ioHandler = new Handler(ioThread.getLooper());
+    }
+
+    public void get(String userId, OnProfileListener listener) {
+        Profile cached = memory.get(userId);
+        if (cached != null) {
+            listener.onProfile(cached);
+            revalidate(userId, cached, listener);
+            return;
+        }
+
+        ioHandler.post(() -> {
+            Profile stored = read(userId);
+            mainHandler.post(() -> {
+                if (stored != null) {
+                    memory.put(userId, stored);
+                    listener.onProfile(stored);
+                    revalidate(userId, stored, listener);
+                } else {
+                    fetch(userId, listener);
+                }
+            });
+        });
+    }
+
+    // What memory holds right now, verified or not, without touching the disk or the network
+    public Profile peek(String userId) {
+        return memory.get(userId);
+    }
+
+    // Seeds memory and disk from a users/{uid} record the caller has already downloaded
+    public Profile put(DataSnapshot snapshot) {
+        String userId = snapshot.getKey();
+        User user = snapshot.getValue(User.class);
+        user.setId(userId);
+        DataSnapshot profileSnapshot = snapshot.child("profile");
+        Long version = snapshot.child("updatedAt").getValue(Long.class);
+        Profile profile = new Profile(user,
+                profileSnapshot.child("bio").getValue(String.class),
+                profileSnapshot.child("hobbies").getValue(String.class),
+                profileSnapshot.child("relationshipGoals").getValue(String.class),
+                version != null ? version : 0);
+
+        memory.put(userId, profile);
+        ioHandler.post(() -> write(userId, profile));
+        return profile;
+    }
+
+    // Seeds memory from a discovery card; a verified entry is kept as it is
+    public void putCandidate(Candidate candidate) {
+        Profile cached = memory.get(candidate.getId());
+        if (cached != null && cached.version != UNVERIFIED) {
+            return;
+        }
+
+        User user = new User();
+        user.setId(candidate.getId());
+        user.setFirstName(candidate.getFirstName());
+        user.setLastName(candidate.getLastName());
+        user.setAge(candidate.getAge());
+        user.setGender(candidate.getGender());
+        user.setInterestedIn(candidate.getInterestedIn());
+        user.setCourse(candidate.getCourse());
+        user.setProfileImage(candidate.getProfileImage());
+        memory.put(candidate.getId(), new Profile(user, candidate.getBio(), candidate.getHobbies(),
+                cached != null ? cached.relationshipGoals : null, UNVERIFIED));
+    }
+
+    // After an own-profile save, so the next read goes to the server
+    public void invalidate(String userId) {
+        memory.remove(userId);
+        ioHandler.post(() -> new File(dir, userId).delete());
+    }
+
+    // One small read of updatedAt instead of the whole record
+    private void revalidate(String userId, Profile cached, OnProfileListener listener) {
+        mDatabase.child("users").child(userId).child("updatedAt").get().addOnCompleteListener(task -> {
+            if (!task.isSuccessful()) {
+                return; // keep showing the cached copy
+            }
+            Long version = task.getResult().getValue(Long.class);
+            if (cached.version == UNVERIFIED || cached.version != (version != null ? version : 0)) {
+                fetch(userId, listener);
+            }
+        });
+    }
+
+    private void fetch(String userId, OnProfileListener listener) {
+        mDatabase.child("users").child(userId).addListenerForSingleValueEvent(new ValueEventListener() {
+            @Override
+            public void onDataChange(@NonNull DataSnapshot snapshot) {
+                if (!snapshot.exists()) {
+                    invalidate(userId);
+                    listener.onProfile(null);
+                    return;
+                }
+
+                listener.onProfile(put(snapshot));
+            }
+
+            @Override
+            public void onCancelled(@NonNull DatabaseError error) {
+                listener.onError(error);
+            }
+        });
+    }
+
+    private Profile read(String userId) {
+        AtomicFile file = new AtomicFile(new File(dir, userId));
+        try (DataInputStream in = new DataInputStream(file.openRead())) {
+            if (in.readInt() != FORMAT_VERSION) {
+                return null;
+            }
+
+            long version = in.readLong();
+            User user = new User();
+            user.setId(userId);
+            user.setFirstName(DataStreams.readNullable(in));
+            user.setLastName(DataStreams.readNullable(in));
+            user.setEmail(DataStreams.readNullable(in));
+            user.setAge(in.readInt());
+            user.setBirthday(DataStreams.readNullable(in));
+            user.setCourse(DataStreams.readNullable(in));
+            user.setGender(DataStreams.readNullable(in));
+            user.setInterestedIn(DataStreams.readNullable(in));
+            user.setProfileImage(DataStreams.readNullable(in));
+            user.setCreatedAt(in.readLong());
+            return new Profile(user, DataStreams.readNullable(in), DataStreams.readNullable(in), DataStreams.readNullable(in), version);
+        } catch (FileNotFoundException e) {
+            return null;
+        } catch (IOException e) {
+            Log.w(TAG, "Discarding unreadable profile", e);
+            return null;
+        }
+    }
+
+    private void write(String userId, Profile profile) {
+        if (!dir.exists() && !dir.mkdirs()) {
+            return;
+        }
+
+        AtomicFile file = new AtomicFile(new File(dir, userId));
+        FileOutputStream stream = null;
+        try {
+            stream = file.startWrite();
+            DataOutputStream out = new DataOutputStream(stream);
+            User user = profile.user;
+
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(profile.version);
+            DataStreams.writeNullable(out, user.getFirstName());
+            DataStreams.writeNullable(out, user.getLastName());
+            DataStreams.writeNullable(out, user.getEmail());
+            out.writeInt(user.getAge());
+            DataStreams.writeNullable(out, user.getBirthday());
+            DataStreams.writeNullable(out, user.getCourse());
+            DataStreams.writeNullable(out, user.getGender());
+            DataStreams.writeNullable(out, user.getInterestedIn());
+            DataStreams.writeNullable(out, user.getProfileImage());
+            out.writeLong(user.getCreatedAt());
+            DataStreams.writeNullable(out, profile.bio);
+            DataStreams.writeNullable(out, profile.hobbies);
+            DataStreams.writeNullable(out, profile.relationshipGoals);
+
+            out.flush();
+            file.finishWrite(stream);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to save profile", e);
+            if (stream != null) {
+                file.failWrite(stream);
+            }
+        }
+        trimDisk();
+    }
+
+    // Drops the least recently written files beyond the disk budget
+    private void trimDisk() {
+        File[] files = dir.listFiles();
+        if (files == null || files.length <= DISK_ENTRIES) {
+            return;
+        }
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (int i = 0; i < files.length - DISK_ENTRIES; i++) {
+            files[i].delete();
+        }
+    }
+}
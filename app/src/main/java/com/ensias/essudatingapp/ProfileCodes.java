@@ -0,0 +1,79 @@
+package com.ensias.essudatingapp;
+
+import android.content.Context;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Interns gender and course strings to small int codes.
+ *
+ * Codes are assigned once when a profile is deserialized, so filtering candidates is a
+ * few int comparisons instead of case-insensitive string compares. Course codes follow
+ * R.array.courses_array; courses not in the array get the next free code.
+ */
+public final class ProfileCodes {
+
+    // Wildcard used by preferences ("Everyone", "Any" course or no preference at all)
+    public static final int ANY = 0;
+    public static final int UNKNOWN = -1;
+
+    public static final int GENDER_MALE = 1;
+    public static final int GENDER_FEMALE = 2;
+    public static final int GENDER_OTHER = 3;
+
+    private static final Map<String, Integer> courseCodes = new HashMap<>();
+    private static int nextCourseCode = 1;
+
+    private ProfileCodes() {
+    }
+
+    // Seeds the course table in array order, call once before profiles are loaded
+    public static synchronized void init(Context context) {
+        if (!courseCodes.isEmpty()) {
+            return;
+        }
+        for (String course : context.getResources().getStringArray(R.array.courses_array)) {
+            courseCode(course);
+        }
+    }
+
+    public static int genderCode(String gender) {
+        if (gender == null) return UNKNOWN;
+        if (gender.equalsIgnoreCase("Male")) return GENDER_MALE;
+        if (gender.equalsIgnoreCase("Female")) return GENDER_FEMALE;
+        if (gender.equalsIgnoreCase("Other")) return GENDER_OTHER;
+        return UNKNOWN;
+    }
+
+    // Preference values come from R.array.gender_preference_array and interested_in_array
+    public static int genderPreferenceCode(String preference) {
+        if (isWildcard(preference) || preference.equalsIgnoreCase("Everyone")) return ANY;
+        if (preference.equalsIgnoreCase("Men")) return GENDER_MALE;
+        if (preference.equalsIgnoreCase("Women")) return GENDER_FEMALE;
+
+        // Older records may hold a gender directly; anything else, like "Custom", accepts everyone
+        int code = genderCode(preference);
+        return code != UNKNOWN ? code : ANY;
+    }
+
+    public static synchronized int courseCode(String course) {
+        if (isWildcard(course)) {
+            return ANY;
+        }
+
+        String key = course.trim().toLowerCase(Locale.ROOT);
+        Integer code = courseCodes.get(key);
+        if (code == null) {
+            code = nextCourseCode++;
+            courseCodes.put(key, code);
+        }
+        return code;
+    }
+
+    // "Any" and the empty string both mean no preference
+    private static boolean isWildcard(String value) {
+        return value == null || value.trim().isEmpty() || value.trim().equalsIgnoreCase(DiscoveryIndex.ANY);
+    }
+}
@@ -15,6 +15,7 @@ import com.google.android.gms.tasks.Task;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.database.DatabaseReference;
 import com.google.firebase.database.FirebaseDatabase;
+import com.google.firebase.database.ServerValue;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -78,8 +79,22 @@ public class ProfileSetupActivity extends AppCompatActivity {
         profileData.put("hobbies", hobbies);
         profileData.put("relationshipGoals", relationshipGoals);
 
+        Map<String, Object> updates = new HashMap<>();
+        updates.put("users/" + userId + "/profile", profileData);
+        updates.put("users/" + userId + "/updatedAt", ServerValue.TIMESTAMP);
+
+        // Copy bio and hobbies onto the discovery card written at registration
+        String gender = getIntent().getStringExtra("gender");
+        String course = getIntent().getStringExtra("course");
+        if (gender != null && course != null) {
+            Map<String, Object> cardFields = new HashMap<>();
+            cardFields.put("bio", bio);
+            cardFields.put("hobbies", hobbies);
+            DiscoveryIndex.putFields(updates, userId, gender, course, cardFields);
+        }
+
         // Save to Firebase
-        mDatabase.child("users").child(userId).child("profile").setValue(profileData)
+        mDatabase.updateChildren(updates)
                 .addOnCompleteListener(new OnCompleteListener<Void>() {
                     @Override
                     public void onComplete(@NonNull Task<Void> task) {
@@ -25,6 +25,7 @@ import com.google.firebase.auth.AuthResult;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.database.DatabaseReference;
 import com.google.firebase.database.FirebaseDatabase;
+import com.google.firebase.database.ServerValue;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
@@ -258,9 +259,20 @@ public class RegisterActivity extends AppCompatActivity {
         userData.put("interestedIn", interestedInSpinner.getSelectedItem().toString());
         userData.put("profileImage", imageUrl);
         userData.put("createdAt", new Date().getTime());
-
-        // Save to Firebase
-        mDatabase.child("users").child(userId).setValue(userData)
+        userData.put("updatedAt", ServerValue.TIMESTAMP);
+
+        // Save the user and their discovery index entries in one atomic write
+        Map<String, Object> updates = new HashMap<>();
+        updates.put("users/" + userId, userData);
+        User user = new User((String) userData.get("firstName"), (String) userData.get("lastName"),
+                (String) userData.get("email"), (Integer) userData.get("age"), (String) userData.get("birthday"),
+                (String) userData.get("course"), (String) userData.get("gender"),
+                (String) userData.get("interestedIn"), imageUrl);
+        user.setCreatedAt((Long) userData.get("createdAt"));
+        DiscoveryIndex.putEntry(updates, userId, user.getGender(), user.getCourse(),
+                DiscoveryIndex.entry(user, null, null));
+
+        mDatabase.updateChildren(updates)
                 .addOnCompleteListener(new OnCompleteListener<Void>() {
                     @Override
                     public void onComplete(@NonNull Task<Void> task) {
@@ -268,6 +280,8 @@ public class RegisterActivity extends AppCompatActivity {
                             Toast.makeText(RegisterActivity.this, "Registration successful!", Toast.LENGTH_SHORT).show();
                             // Redirect to profile setup
                             Intent intent = new Intent(RegisterActivity.this, ProfileSetupActivity.class);
+                            intent.putExtra("gender", user.getGender());
+                            intent.putExtra("course", user.getCourse());
                             startActivity(intent);
                             finish();
                         } else {
@@ -0,0 +1,115 @@
+package com.ensias.essudatingapp;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import com.google.firebase.database.ChildEventListener;
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
+import com.google.firebase.database.DatabaseReference;
+import com.google.firebase.database.ValueEventListener;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * In-memory set of the user IDs the current user has already liked or skipped.
+ *
+ * The interactions subtree is loaded once and then kept current by a ChildEventListener,
+ * so "already swiped?" is a local lookup instead of one read per candidate. The likes among
+ * them are kept apart for the mutual-like check, see SwipeQueue.
+ */
+public class SeenSet {
+
+    public interface OnReadyListener {
+        void onReady();
+    }
+
+    private final DatabaseReference interactionsRef;
+    private final Set<String> seenIds = new HashSet<>();
+    private final Set<String> likedIds = new HashSet<>();
+    private ChildEventListener childListener;
+    private boolean ready;
+
+    public SeenSet(DatabaseReference root, String userId) {
+        interactionsRef = root.child("users").child(userId).child("interactions");
+    }
+
+    public void start(OnReadyListener onReadyListener) {
+        if (childListener != null) {
+            if (ready) onReadyListener.onReady();
+            return;
+        }
+
+        childListener = new ChildEventListener() {
+            @Override
+            public void onChildAdded(@NonNull DataSnapshot snapshot, @Nullable String previousChildName) {
+                seenIds.add(snapshot.getKey());
+                updateLike(snapshot);
+            }
+
+            @Override
+            public void onChildChanged(@NonNull DataSnapshot snapshot, @Nullable String previousChildName) {
+                updateLike(snapshot);
+            }
+
+            @Override
+            public void onChildRemoved(@NonNull DataSnapshot snapshot) {
+                seenIds.remove(snapshot.getKey());
+                likedIds.remove(snapshot.getKey());
+            }
+
+            @Override
+            public void onChildMoved(@NonNull DataSnapshot snapshot, @Nullable String previousChildName) {}
+
+            @Override
+            public void onCancelled(@NonNull DatabaseError error) {}
+        };
+        interactionsRef.addChildEventListener(childListener);
+
+        // Value events fire after the child events for the same data, so this marks the
+        // end of the initial load without downloading the subtree a second time
+        interactionsRef.addListenerForSingleValueEvent(new ValueEventListener() {
+            @Override
+            public void onDataChange(@NonNull DataSnapshot snapshot) {
+                ready = true;
+                onReadyListener.onReady();
+            }
+
+            @Override
+            public void onCancelled(@NonNull DatabaseError error) {
+                ready = true;
+                onReadyListener.onReady();
+            }
+        });
+    }
+
+    public boolean contains(String userId) {
+        return seenIds.contains(userId);
+    }
+
+    // A like in users/{me}/interactions, as opposed to one only recorded locally by add()
+    public boolean hasLiked(String userId) {
+        return likedIds.contains(userId);
+    }
+
+    // Records a swipe locally before the write reaches the server
+    public void add(String userId) {
+        seenIds.add(userId);
+    }
+
+    private void updateLike(DataSnapshot interaction) {
+        if (SwipeQueue.TYPE_LIKE.equals(interaction.child("type").getValue(String.class))) {
+            likedIds.add(interaction.getKey());
+        } else {
+            likedIds.remove(interaction.getKey());
+        }
+    }
+
+    public void stop() {
+        if (childListener != null) {
+            interactionsRef.removeEventListener(childListener);
+            childListener = null;
+            ready = false;
+        }
+    }
+}
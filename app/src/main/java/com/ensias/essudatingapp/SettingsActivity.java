@@ -90,6 +90,8 @@ public class SettingsActivity extends AppCompatActivity {
         logoutButton.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
+                InteractionRepository.release();
+                Outbox.release();
                 mAuth.signOut();
                 Intent intent = new Intent(SettingsActivity.this, MainActivity.class);
                 intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
@@ -149,12 +151,47 @@ public class SettingsActivity extends AppCompatActivity {
     private void deleteAccount() {
         // In a real app, you would show a confirmation dialog here
 
+        // Load the user first so their discovery index entries can be removed with them
+        mDatabase.child("users").child(currentUserId).addListenerForSingleValueEvent(new ValueEventListener() {
+            @Override
+            public void onDataChange(@NonNull DataSnapshot dataSnapshot) {
+                Map<String, Object> updates = new HashMap<>();
+                updates.put("users/" + currentUserId, null);
+
+                User user = dataSnapshot.getValue(User.class);
+                if (user != null) {
+                    DiscoveryIndex.putRemoval(updates, currentUserId, user.getGender(), user.getCourse());
+                }
+                updates.put(DiscoveryIndex.META_NODE + "/" + currentUserId, null);
+
+                // Our likes in other people's likedBy, and our own likedBy list
+                updates.put(LikedBySet.NODE + "/" + currentUserId, null);
+                for (DataSnapshot interaction : dataSnapshot.child("interactions").getChildren()) {
+                    updates.put(LikedBySet.NODE + "/" + interaction.getKey() + "/" + currentUserId, null);
+                }
+
+                deleteUserData(updates);
+            }
+
+            @Override
+            public void onCancelled(@NonNull DatabaseError databaseError) {
+                Toast.makeText(SettingsActivity.this, "Failed to delete user data: " + databaseError.getMessage(),
+                        Toast.LENGTH_SHORT).show();
+            }
+        });
+    }
+
+    private void deleteUserData(Map<String, Object> updates) {
         // Delete user data from Firebase Database
-        mDatabase.child("users").child(currentUserId).removeValue()
+        mDatabase.updateChildren(updates)
                 .addOnCompleteListener(new OnCompleteListener<Void>() {
                     @Override
                     public void onComplete(@NonNull Task<Void> task) {
                         if (task.isSuccessful()) {
+                            // Nothing queued for the deleted user may be written back
+                            InteractionRepository.release();
+                            Outbox.release();
+
                             // Delete user authentication
                             mAuth.getCurrentUser().delete()
                                     .addOnCompleteListener(new OnCompleteListener<Void>() {
@@ -0,0 +1,23 @@
+package com.ensias.essudatingapp;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Hands out a RecyclerView stable ID per string key (match ID, message push key), so a
+ * row keeps its ID, and its views, for as long as the adapter lives.
+ */
+public class StableIds {
+
+    private final Map<String, Long> ids = new HashMap<>();
+    private long nextId;
+
+    public long idFor(String key) {
+        Long id = ids.get(key);
+        if (id == null) {
+            id = nextId++;
+            ids.put(key, id);
+        }
+        return id;
+    }
+}
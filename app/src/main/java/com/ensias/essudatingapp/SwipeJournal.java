@@ -0,0 +1,134 @@
+package com.ensias.essudatingapp;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Append-only file of swipes that have not been acknowledged by the server yet.
+ *
+ * Each swipe is appended as soon as it is made, which is enough to survive the app being
+ * killed; the file is fsynced once per batch, before the batch is sent, so it also
+ * survives the device going down. Once a batch is acknowledged the file is compacted to
+ * the swipes still pending. All methods block and are called from SwipeQueue's I/O thread.
+ */
+public class SwipeJournal {
+
+    private static final String TAG = "SwipeJournal";
+    private static final int FORMAT_VERSION = 1;
+
+    private final File file;
+    private FileOutputStream fileOut;
+    private DataOutputStream out;
+
+    public SwipeJournal(Context context, String userId) {
+        this.file = new File(context.getFilesDir(), "swipe_journal_" + userId + ".bin");
+    }
+
+    // Swipes in the order they were made. A record cut short by a crash ends the read.
+    public List<SwipeQueue.Swipe> readAll() {
+        List<SwipeQueue.Swipe> swipes = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            if (in.readInt() != FORMAT_VERSION) {
+                return swipes;
+            }
+            while (true) {
+                swipes.add(new SwipeQueue.Swipe(in.readUTF(), in.readUTF(), in.readLong()));
+            }
+        } catch (FileNotFoundException | EOFException e) {
+            // No journal yet, or reached the end
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to read swipe journal", e);
+        }
+        return swipes;
+    }
+
+    public void append(SwipeQueue.Swipe swipe) {
+        try {
+            open();
+            writeRecord(out, swipe);
+            out.flush(); // hand the record to the OS, it outlives the process from here
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to append to swipe journal", e);
+        }
+    }
+
+    // Makes everything appended so far durable, called once per batch
+    public void sync() {
+        try {
+            if (fileOut != null) {
+                fileOut.getFD().sync();
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to sync swipe journal", e);
+        }
+    }
+
+    // Rewrites the journal with only the swipes still pending
+    public void compact(List<SwipeQueue.Swipe> pending) {
+        close();
+        if (pending.isEmpty()) {
+            file.delete();
+            return;
+        }
+
+        File tmp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream tmpOut = new FileOutputStream(tmp)) {
+            DataOutputStream data = new DataOutputStream(new BufferedOutputStream(tmpOut));
+            data.writeInt(FORMAT_VERSION);
+            for (SwipeQueue.Swipe swipe : pending) {
+                writeRecord(data, swipe);
+            }
+            data.flush();
+            tmpOut.getFD().sync();
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to compact swipe journal", e);
+            tmp.delete();
+            return;
+        }
+        if (!tmp.renameTo(file)) {
+            Log.e(TAG, "Failed to replace swipe journal");
+        }
+    }
+
+    public void close() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to close swipe journal", e);
+            }
+            out = null;
+            fileOut = null;
+        }
+    }
+
+    private void open() throws IOException {
+        if (out != null) {
+            return;
+        }
+        boolean isNew = !file.exists() || file.length() == 0;
+        fileOut = new FileOutputStream(file, true);
+        out = new DataOutputStream(new BufferedOutputStream(fileOut));
+        if (isNew) {
+            out.writeInt(FORMAT_VERSION);
+        }
+    }
+
+    private static void writeRecord(DataOutputStream out, SwipeQueue.Swipe swipe) throws IOException {
+        out.writeUTF(swipe.userId);
+        out.writeUTF(swipe.type);
+        out.writeLong(swipe.timestamp);
+    }
+}
@@ -0,0 +1,348 @@
+package com.ensias.essudatingapp;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import androidx.annotation.NonNull;
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
+import com.google.firebase.database.DatabaseReference;
+import com.google.firebase.database.FirebaseDatabase;
+import com.google.firebase.database.ValueEventListener;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Ordered background queue for like/skip writes, owned by InteractionRepository.
+ *
+ * A swipe is recorded here and the UI moves on immediately. Swipes made close together
+ * are coalesced into one multi-path update, sent once the batch window closes or the
+ * batch is full. Each like also writes its likedBy entry in the same update, see LikedBySet.
+ * Batches go out one at a time in swipe order; a failed batch is retried with exponential
+ * backoff instead of blocking the deck, and right away when the connection comes back.
+ * A batch the server rejects for good is dropped and reported, see WriteRetry.
+ *
+ * Unsent swipes are kept in a SwipeJournal, so swipes made offline survive the app being
+ * killed and are replayed, match checks included, on the next start.
+ *
+ * A match is checked from both sides: when our like is stored and the other user is in
+ * the LikedBySet, and when their like arrives for someone we already liked. Both can
+ * happen for the same pair; the match ID is deterministic, so the second write is a no-op.
+ */
+public class SwipeQueue {
+
+    public static final String TYPE_LIKE = "like";
+    public static final String TYPE_SKIP = "skip";
+
+    static final long BATCH_WINDOW_MS = 500;
+    static final int MAX_BATCH_SIZE = 20;
+
+    public interface Listener {
+        void onPendingCountChanged(int pending);
+        void onMatch(String userId);
+        // A batch the server rejected for good, see WriteRetry
+        void onSwipesDropped(int count, String reason);
+    }
+
+    public static class Swipe {
+        final String userId;
+        final String type;
+        final long timestamp;
+
+        Swipe(String userId, String type, long timestamp) {
+            this.userId = userId;
+            this.type = type;
+            this.timestamp = timestamp;
+        }
+
+        public boolean isLike() {
+            return TYPE_LIKE.equals(type);
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> data = new HashMap<>();
+            data.put("type", type);
+            data.put("timestamp", timestamp);
+            return data;
+        }
+    }
+
+    private final DatabaseReference mDatabase;
+    private final String userId;
+    private final String interactionsPath;
+    private final SwipeJournal journal;
+    private final LikedBySet likedBySet;
+    private final SeenSet seenSet;
+    private final MatchService matchService;
+    private final ProfileCache profileCache;
+    private final List<Listener> listeners = new ArrayList<>();
+    private final List<Runnable> onLoaded = new ArrayList<>();
+    private final ArrayDeque<Swipe> pending = new ArrayDeque<>();
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Handler ioHandler;
+    private final Runnable drainRunnable = this::drain;
+    private final WriteRetry retry = new WriteRetry(handler, drainRunnable);
+    private final DatabaseReference connectedRef;
+    private final ValueEventListener connectedListener;
+
+    private boolean loaded;
+    private int inFlightCount;
+    private boolean scheduled;
+    private boolean retrying;
+    private boolean stopped;
+
+    SwipeQueue(Context context, DatabaseReference root, String userId, SeenSet seenSet) {
+        this.mDatabase = root;
+        this.userId = userId;
+        this.interactionsPath = "users/" + userId + "/interactions/";
+        this.journal = new SwipeJournal(context, userId);
+        this.likedBySet = new LikedBySet(root, userId);
+        this.seenSet = seenSet;
+        this.matchService = new MatchService(root);
+        this.profileCache = ProfileCache.getInstance(context);
+
+        HandlerThread ioThread = new HandlerThread("SwipeJournal");
+        ioThread.start();
+        ioHandler = new Handler(ioThread.getLooper());
+
+        likedBySet.start(this::onLikedBy);
+        loadJournal();
+
+        // Replay as soon as the connection is back instead of waiting out the backoff
+        connectedRef = FirebaseDatabase.getInstance().getReference(".info/connected");
+        connectedListener = new ValueEventListener() {
+            @Override
+            public void onDataChange(@NonNull DataSnapshot snapshot) {
+                if (Boolean.TRUE.equals(snapshot.getValue(Boolean.class)) && retrying) {
+                    retry.resetDelay();
+                    drain();
+                }
+            }
+
+            @Override
+            public void onCancelled(@NonNull DatabaseError error) {}
+        };
+        connectedRef.addValueEventListener(connectedListener);
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+        listener.onPendingCountChanged(pending.size());
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    // Runs once the journal of the last session has been read
+    public void whenLoaded(Runnable runnable) {
+        if (loaded) {
+            runnable.run();
+        } else {
+            onLoaded.add(runnable);
+        }
+    }
+
+    public void enqueue(String userId, String type) {
+        if (stopped) {
+            return;
+        }
+        Swipe swipe = new Swipe(userId, type, System.currentTimeMillis());
+        pending.add(swipe);
+        ioHandler.post(() -> journal.append(swipe));
+        notifyPendingCount();
+
+        if (!loaded || retrying) {
+            return; // goes out with the replay or the next retry
+        }
+        if (pending.size() - inFlightCount >= MAX_BATCH_SIZE) {
+            drain();
+        } else if (!scheduled) {
+            // The first swipe of a batch opens the window, later ones ride along
+            scheduled = true;
+            handler.postDelayed(drainRunnable, BATCH_WINDOW_MS);
+        }
+    }
+
+    // Users swiped but not yet acknowledged, so the deck can leave them out
+    public Set<String> getPendingUserIds() {
+        Set<String> ids = new HashSet<>();
+        for (Swipe swipe : pending) {
+            ids.add(swipe.userId);
+        }
+        return ids;
+    }
+
+    // Sends the open batch now instead of waiting for the window, e.g. when a screen pauses
+    public void flush() {
+        drain();
+    }
+
+    private void loadJournal() {
+        ioHandler.post(() -> {
+            List<Swipe> journaled = journal.readAll();
+            handler.post(() -> {
+                // Older than anything swiped while the file was being read
+                for (int i = journaled.size() - 1; i >= 0; i--) {
+                    pending.addFirst(journaled.get(i));
+                }
+                loaded = true;
+                notifyPendingCount();
+                for (Runnable runnable : onLoaded) {
+                    runnable.run();
+                }
+                onLoaded.clear();
+                drain();
+            });
+        });
+    }
+
+    private void drain() {
+        handler.removeCallbacks(drainRunnable);
+        scheduled = false;
+
+        if (!loaded || stopped || inFlightCount > 0 || pending.isEmpty()) {
+            return;
+        }
+
+        List<Swipe> batch = new ArrayList<>(Math.min(pending.size(), MAX_BATCH_SIZE));
+        for (Swipe swipe : pending) {
+            if (batch.size() == MAX_BATCH_SIZE) break;
+            batch.add(swipe);
+        }
+        inFlightCount = batch.size();
+
+        // Durable before it leaves: one fsync for the whole batch, then the write
+        ioHandler.post(() -> {
+            journal.sync();
+            handler.post(() -> send(batch));
+        });
+    }
+
+    private void send(List<Swipe> batch) {
+        if (stopped) {
+            return; // shut down before the journal was synced
+        }
+
+        mDatabase.updateChildren(toUpdates(batch), (error, ref) -> {
+            if (stopped) {
+                return; // shut down while in flight; the batch stays in the journal
+            }
+            inFlightCount = 0;
+
+            if (error == null) {
+                removeHead(batch.size());
+                for (Swipe swipe : batch) {
+                    onSwipeSaved(swipe);
+                }
+                // Whatever queued up meanwhile has already waited long enough
+                drain();
+            } else if (retry.retryLater(error)) {
+                // Keep the batch at the head so later swipes stay in order
+                scheduled = true;
+                retrying = true;
+            } else {
+                // Rejected for good; let the rest of the queue through
+                removeHead(batch.size());
+                for (Listener listener : new ArrayList<>(listeners)) {
+                    listener.onSwipesDropped(batch.size(), error.getMessage());
+                }
+                drain();
+            }
+        });
+    }
+
+    // Takes the head batch off the queue and the journal, once it is stored or dropped
+    private void removeHead(int count) {
+        for (int i = 0; i < count; i++) {
+            pending.poll();
+        }
+        List<Swipe> remaining = new ArrayList<>(pending);
+        ioHandler.post(() -> journal.compact(remaining));
+
+        retrying = false;
+        retry.reset();
+        notifyPendingCount();
+    }
+
+    // Mutual like is a local lookup; the other side sees our like once it is stored.
+    // Likes from before the likedBy index are read once until the admin backfill has run.
+    private void onSwipeSaved(Swipe swipe) {
+        if (!swipe.isLike()) {
+            return;
+        }
+        if (likedBySet.contains(swipe.userId)) {
+            createMatch(swipe.userId);
+        } else if (!likedBySet.isBackfilled()) {
+            mDatabase.child("users").child(swipe.userId).child("interactions").child(userId).child("type").get()
+                    .addOnSuccessListener(type -> {
+                        if (TYPE_LIKE.equals(type.getValue(String.class))) {
+                            createMatch(swipe.userId);
+                        }
+                    });
+        }
+    }
+
+    // A like that arrived after ours was stored; one still queued is checked in onSwipeSaved
+    private void onLikedBy(String likerId) {
+        if (seenSet.hasLiked(likerId) && !getPendingUserIds().contains(likerId)) {
+            createMatch(likerId);
+        }
+    }
+
+    // Both cards are normally in memory already: ours from the home screen, theirs from the deck
+    private void createMatch(String otherUserId) {
+        if (stopped) {
+            return;
+        }
+        matchService.createMatch(userId, otherUserId, cachedCard(userId), cachedCard(otherUserId))
+                .addOnCompleteListener(task -> {
+                    if (task.isSuccessful()) {
+                        for (Listener listener : new ArrayList<>(listeners)) {
+                            listener.onMatch(otherUserId);
+                        }
+                    }
+                });
+    }
+
+    private MatchSummaries.Card cachedCard(String cardUserId) {
+        ProfileCache.Profile profile = profileCache.peek(cardUserId);
+        return profile != null ? MatchSummaries.Card.of(profile.getUser()) : null;
+    }
+
+    private void notifyPendingCount() {
+        for (Listener listener : new ArrayList<>(listeners)) {
+            listener.onPendingCountChanged(pending.size());
+        }
+    }
+
+    private Map<String, Object> toUpdates(List<Swipe> swipes) {
+        Map<String, Object> updates = new HashMap<>();
+        for (Swipe swipe : swipes) {
+            updates.put(interactionsPath + swipe.userId, swipe.toMap());
+            LikedBySet.putSwipe(updates, userId, swipe.userId, swipe.isLike(), swipe.timestamp);
+        }
+        return updates;
+    }
+
+    // Signed out or another user signed in. Nothing is compacted from here on, so the journal
+    // keeps this user's unsent swipes, in flight or not, for their next sign-in.
+    void shutdown() {
+        stopped = true;
+        handler.removeCallbacks(drainRunnable);
+        inFlightCount = 0;
+        connectedRef.removeEventListener(connectedListener);
+        likedBySet.stop();
+        ioHandler.post(() -> {
+            journal.close();
+            ioHandler.getLooper().quitSafely();
+        });
+    }
+}
@@ -20,6 +20,12 @@ public class User {
     private String profileImage;
     private long createdAt;
 
+    // Interned on deserialization so discovery filters compare ints, see ProfileCodes
+    @Exclude
+    private int genderCode = ProfileCodes.UNKNOWN;
+    @Exclude
+    private int courseCode = ProfileCodes.ANY;
+
     // Default constructor required for Firebase
     public User() {
     }
@@ -31,13 +37,30 @@ public class User {
         this.email = email;
         this.age = age;
         this.birthday = birthday;
-        this.course = course;
-        this.gender = gender;
+        setCourse(course);
+        setGender(gender);
         this.interestedIn = interestedIn;
         this.profileImage = profileImage;
         this.createdAt = System.currentTimeMillis();
     }
 
+    // Copy to edit without touching a record other code still holds
+    public User(User other) {
+        this.id = other.id;
+        this.firstName = other.firstName;
+        this.lastName = other.lastName;
+        this.email = other.email;
+        this.age = other.age;
+        this.birthday = other.birthday;
+        this.course = other.course;
+        this.gender = other.gender;
+        this.interestedIn = other.interestedIn;
+        this.profileImage = other.profileImage;
+        this.createdAt = other.createdAt;
+        this.genderCode = other.genderCode;
+        this.courseCode = other.courseCode;
+    }
+
     @Exclude
     public String getId() {
         return id;
@@ -94,6 +117,12 @@ public class User {
 
     public void setCourse(String course) {
         this.course = course;
+        this.courseCode = ProfileCodes.courseCode(course);
+    }
+
+    @Exclude
+    public int getCourseCode() {
+        return courseCode;
     }
 
     public String getGender() {
@@ -102,6 +131,12 @@ public class User {
 
     public void setGender(String gender) {
         this.gender = gender;
+        this.genderCode = ProfileCodes.genderCode(gender);
+    }
+
+    @Exclude
+    public int getGenderCode() {
+        return genderCode;
     }
 
     public String getInterestedIn() {
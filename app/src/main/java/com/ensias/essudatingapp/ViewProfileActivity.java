@@ -6,19 +6,11 @@ import android.widget.Button;
 import android.widget.ImageView;
 import android.widget.TextView;
 import android.widget.Toast;
-import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.appcompat.widget.Toolbar;
 import com.bumptech.glide.Glide;
 import com.google.firebase.auth.FirebaseAuth;
-import com.google.firebase.database.DataSnapshot;
 import com.google.firebase.database.DatabaseError;
-import com.google.firebase.database.DatabaseReference;
-import com.google.firebase.database.FirebaseDatabase;
-import com.google.firebase.database.ValueEventListener;
-
-import java.util.HashMap;
-import java.util.Map;
 
 public class ViewProfileActivity extends AppCompatActivity {
 
@@ -27,9 +19,11 @@ public class ViewProfileActivity extends AppCompatActivity {
     private Button likeButton, skipButton;
 
     private FirebaseAuth mAuth;
-    private DatabaseReference mDatabase;
     private String currentUserId;
     private String userId;
+    private InteractionRepository interactions;
+    private SwipeQueue.Listener swipeListener;
+    private final Runnable onInteractionsReady = this::hideButtonsIfSwiped;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -53,9 +47,27 @@ public class ViewProfileActivity extends AppCompatActivity {
 
         // Initialize Firebase
         mAuth = FirebaseAuth.getInstance();
-        mDatabase = FirebaseDatabase.getInstance().getReference();
         currentUserId = mAuth.getCurrentUser().getUid();
 
+        interactions = InteractionRepository.getInstance(this, currentUserId);
+        swipeListener = new SwipeQueue.Listener() {
+            @Override
+            public void onPendingCountChanged(int pending) {}
+
+            @Override
+            public void onMatch(String matchedUserId) {
+                // Show match notification
+                Toast.makeText(ViewProfileActivity.this, "You have a new match!", Toast.LENGTH_LONG).show();
+            }
+
+            @Override
+            public void onSwipesDropped(int count, String reason) {
+                Toast.makeText(ViewProfileActivity.this, count + " swipes could not be saved: " + reason,
+                        Toast.LENGTH_LONG).show();
+            }
+        };
+        interactions.addListener(swipeListener);
+
         // Initialize UI elements
         profileImageView = findViewById(R.id.profile_image_view);
         nameAgeTextView = findViewById(R.id.name_age_text_view);
@@ -82,16 +94,27 @@ public class ViewProfileActivity extends AppCompatActivity {
             }
         });
 
+        // Already interacted, hide buttons; answered from memory once the shared state is loaded
+        interactions.whenReady(onInteractionsReady);
+
         // Load user data
         loadUserData();
     }
 
+    private void hideButtonsIfSwiped() {
+        if (interactions.hasInteracted(userId)) {
+            likeButton.setVisibility(View.GONE);
+            skipButton.setVisibility(View.GONE);
+        }
+    }
+
     private void loadUserData() {
-        mDatabase.child("users").child(userId).addListenerForSingleValueEvent(new ValueEventListener() {
+        // Usually already in memory from the card or the match list
+        ProfileCache.getInstance(this).get(userId, new ProfileCache.OnProfileListener() {
             @Override
-            public void onDataChange(@NonNull DataSnapshot dataSnapshot) {
-                if (dataSnapshot.exists()) {
-                    User user = dataSnapshot.getValue(User.class);
+            public void onProfile(ProfileCache.Profile profile) {
+                if (profile != null) {
+                    User user = profile.getUser();
 
                     // Set profile image
                     if (user.getProfileImage() != null && !user.getProfileImage().isEmpty()) {
@@ -106,39 +129,14 @@ public class ViewProfileActivity extends AppCompatActivity {
                     courseTextView.setText(user.getCourse());
                     genderTextView.setText(user.getGender());
 
-                    // Get profile info
-                    DataSnapshot profileSnapshot = dataSnapshot.child("profile");
-                    if (profileSnapshot.exists()) {
-                        String bio = profileSnapshot.child("bio").getValue(String.class);
-                        String hobbies = profileSnapshot.child("hobbies").getValue(String.class);
-                        String relationshipGoals = profileSnapshot.child("relationshipGoals").getValue(String.class);
-
-                        bioTextView.setText(bio != null ? bio : "No bio available");
-                        hobbiesTextView.setText(hobbies != null ? hobbies : "No hobbies listed");
-                        relationshipGoalsTextView.setText(relationshipGoals != null ? relationshipGoals : "Not specified");
-                    } else {
-                        bioTextView.setText("No bio available");
-                        hobbiesTextView.setText("No hobbies listed");
-                        relationshipGoalsTextView.setText("Not specified");
-                    }
+                    // Set profile info
+                    String bio = profile.getBio();
+                    String hobbies = profile.getHobbies();
+                    String relationshipGoals = profile.getRelationshipGoals();
 
-                    // Check if already interacted
-                    mDatabase.child("users").child(currentUserId).child("interactions").child(userId)
-                            .addListenerForSingleValueEvent(new ValueEventListener() {
-                                @Override
-                                public void onDataChange(@NonNull DataSnapshot dataSnapshot) {
-                                    if (dataSnapshot.exists()) {
-                                        // Already interacted, hide buttons
-                                        likeButton.setVisibility(View.GONE);
-                                        skipButton.setVisibility(View.GONE);
-                                    }
-                                }
-
-                                @Override
-                                public void onCancelled(@NonNull DatabaseError databaseError) {
-                                    // Do nothing
-                                }
-                            });
+                    bioTextView.setText(bio != null ? bio : "No bio available");
+                    hobbiesTextView.setText(hobbies != null ? hobbies : "No hobbies listed");
+                    relationshipGoalsTextView.setText(relationshipGoals != null ? relationshipGoals : "Not specified");
                 } else {
                     Toast.makeText(ViewProfileActivity.this, "User not found", Toast.LENGTH_SHORT).show();
                     finish();
@@ -146,7 +144,7 @@ public class ViewProfileActivity extends AppCompatActivity {
             }
 
             @Override
-            public void onCancelled(@NonNull DatabaseError databaseError) {
+            public void onError(DatabaseError databaseError) {
                 Toast.makeText(ViewProfileActivity.this, "Failed to load user data: " + databaseError.getMessage(),
                         Toast.LENGTH_SHORT).show();
                 finish();
@@ -155,97 +153,42 @@ public class ViewProfileActivity extends AppCompatActivity {
     }
 
     private void likeUser() {
-        // Save like to database
-        Map<String, Object> likeData = new HashMap<>();
-        likeData.put("type", "like");
-        likeData.put("timestamp", System.currentTimeMillis());
-
-        mDatabase.child("users").child(currentUserId).child("interactions").child(userId).setValue(likeData)
-                .addOnCompleteListener(task -> {
-                    if (task.isSuccessful()) {
-                        // Check if this is a mutual like (match)
-                        checkForMatch();
-
-                        // Hide buttons
-                        likeButton.setVisibility(View.GONE);
-                        skipButton.setVisibility(View.GONE);
-
-                        Toast.makeText(ViewProfileActivity.this, "You liked this user!", Toast.LENGTH_SHORT).show();
-                    } else {
-                        Toast.makeText(ViewProfileActivity.this, "Failed to save like: " + task.getException().getMessage(),
-                                Toast.LENGTH_SHORT).show();
-                    }
-                });
+        // Written in the background by the shared swipe queue, which also checks for a match
+        interactions.like(userId);
+
+        // Hide buttons
+        likeButton.setVisibility(View.GONE);
+        skipButton.setVisibility(View.GONE);
+
+        Toast.makeText(ViewProfileActivity.this, "You liked this user!", Toast.LENGTH_SHORT).show();
     }
 
     private void skipUser() {
-        // Save skip to database
-        Map<String, Object> skipData = new HashMap<>();
-        skipData.put("type", "skip");
-        skipData.put("timestamp", System.currentTimeMillis());
-
-        mDatabase.child("users").child(currentUserId).child("interactions").child(userId).setValue(skipData)
-                .addOnCompleteListener(task -> {
-                    if (task.isSuccessful()) {
-                        // Hide buttons
-                        likeButton.setVisibility(View.GONE);
-                        skipButton.setVisibility(View.GONE);
-
-                        Toast.makeText(ViewProfileActivity.this, "You skipped this user", Toast.LENGTH_SHORT).show();
-                        finish();
-                    } else {
-                        Toast.makeText(ViewProfileActivity.this, "Failed to save skip: " + task.getException().getMessage(),
-                                Toast.LENGTH_SHORT).show();
-                    }
-                });
-    }
+        interactions.skip(userId);
 
-    private void checkForMatch() {
-        mDatabase.child("users").child(userId).child("interactions").child(currentUserId)
-                .addListenerForSingleValueEvent(new ValueEventListener() {
-                    @Override
-                    public void onDataChange(@NonNull DataSnapshot dataSnapshot) {
-                        if (dataSnapshot.exists()) {
-                            String interactionType = dataSnapshot.child("type").getValue(String.class);
-
-                            if (interactionType != null && interactionType.equals("like")) {
-                                // It's a match!
-                                createMatch();
-                            }
-                        }
-                    }
+        // Hide buttons
+        likeButton.setVisibility(View.GONE);
+        skipButton.setVisibility(View.GONE);
 
-                    @Override
-                    public void onCancelled(@NonNull DatabaseError databaseError) {
-                        // Do nothing
-                    }
-                });
+        Toast.makeText(ViewProfileActivity.this, "You skipped this user", Toast.LENGTH_SHORT).show();
+        finish();
     }
 
-    private void createMatch() {
-        // Create a unique match ID
-        String matchId = mDatabase.child("matches").push().getKey();
-
-        // Create match data
-        Map<String, Object> matchData = new HashMap<>();
-        matchData.put("user1", currentUserId);
-        matchData.put("user2", userId);
-        matchData.put("timestamp", System.currentTimeMillis());
-        matchData.put("lastMessage", null);
-        matchData.put("lastMessageTimestamp", null);
-
-        // Save match to database
-        mDatabase.child("matches").child(matchId).setValue(matchData)
-                .addOnCompleteListener(task -> {
-                    if (task.isSuccessful()) {
-                        // Add match reference to both users
-                        mDatabase.child("users").child(currentUserId).child("matches").child(matchId).setValue(true);
-                        mDatabase.child("users").child(userId).child("matches").child(matchId).setValue(true);
-
-                        // Show match notification
-                        Toast.makeText(ViewProfileActivity.this, "You have a new match!", Toast.LENGTH_LONG).show();
-                    }
-                });
+    @Override
+    protected void onPause() {
+        super.onPause();
+        if (interactions != null) {
+            interactions.flush();
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (interactions != null) {
+            interactions.removeListener(swipeListener);
+            interactions.cancelWhenReady(onInteractionsReady);
+        }
     }
 
     @Override
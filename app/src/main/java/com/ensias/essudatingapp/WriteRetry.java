@@ -0,0 +1,69 @@
+package com.ensias.essudatingapp;
+
+import android.os.Handler;
+import com.google.firebase.database.DatabaseError;
+
+/**
+ * Exponential backoff for the background write queues, SwipeQueue and Outbox.
+ *
+ * A failed write stays at the head of its queue and the queue's drain task is posted
+ * again after a delay that doubles on every failure, from one second up to a minute.
+ *
+ * Firebase holds writes while the device is offline instead of failing them, so an error
+ * here usually means the write will never be accepted, e.g. permission denied. Those are
+ * given up on at once, anything else after MAX_ATTEMPTS, so one bad write cannot block
+ * everything queued behind it.
+ */
+class WriteRetry {
+
+    static final long INITIAL_BACKOFF_MS = 1000;
+    static final long MAX_BACKOFF_MS = 60000;
+    static final int MAX_ATTEMPTS = 8;
+
+    private final Handler handler;
+    private final Runnable task;
+    private long backoffMs = INITIAL_BACKOFF_MS;
+    private int attempts;
+
+    WriteRetry(Handler handler, Runnable task) {
+        this.handler = handler;
+        this.task = task;
+    }
+
+    // Runs the task again once the current delay has passed; false if the write should be dropped
+    boolean retryLater(DatabaseError error) {
+        attempts++;
+        if (!isTransient(error) || attempts >= MAX_ATTEMPTS) {
+            return false;
+        }
+        handler.postDelayed(task, backoffMs);
+        backoffMs = Math.min(backoffMs * 2, MAX_BACKOFF_MS);
+        return true;
+    }
+
+    // When the connection is back, so the next attempt does not wait out the backoff
+    void resetDelay() {
+        backoffMs = INITIAL_BACKOFF_MS;
+    }
+
+    // After the head write succeeded or was dropped
+    void reset() {
+        backoffMs = INITIAL_BACKOFF_MS;
+        attempts = 0;
+    }
+
+    static boolean isTransient(DatabaseError error) {
+        switch (error.getCode()) {
+            case DatabaseError.DISCONNECTED:
+            case DatabaseError.NETWORK_ERROR:
+            case DatabaseError.UNAVAILABLE:
+            case DatabaseError.OPERATION_FAILED:
+            case DatabaseError.WRITE_CANCELED:
+            case DatabaseError.EXPIRED_TOKEN:
+            case DatabaseError.MAX_RETRIES:
+                return true;
+            default:
+                return false; // PERMISSION_DENIED, INVALID_TOKEN and other errors retrying cannot fix
+        }
+    }
+}
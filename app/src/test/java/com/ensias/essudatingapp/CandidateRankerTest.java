@@ -0,0 +1,95 @@
+package com.ensias.essudatingapp;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class CandidateRankerTest {
+
+    private final CandidateRanker ranker = new CandidateRanker();
+
+    @Test
+    public void rank_bestOverlapFirst() {
+        long preference = 0b1111L;
+        List<Candidate> ranked = ranker.rank(Arrays.asList(
+                candidate("one", 0b0001L),
+                candidate("three", 0b0111L),
+                candidate("none", 0b10000L),
+                candidate("two", 0b0011L)), preference);
+
+        assertEquals(Arrays.asList("three", "two", "one", "none"), ids(ranked));
+    }
+
+    @Test
+    public void rank_tiesKeepQueryOrder() {
+        long preference = 0b11L;
+        List<Candidate> ranked = ranker.rank(Arrays.asList(
+                candidate("a", 0b01L),
+                candidate("b", 0b11L),
+                candidate("c", 0b10L),
+                candidate("d", 0b11L),
+                candidate("e", 0b01L)), preference);
+
+        assertEquals(Arrays.asList("b", "d", "a", "c", "e"), ids(ranked));
+    }
+
+    @Test
+    public void rank_noPreferenceKeepsQueryOrder() {
+        List<Candidate> candidates = Arrays.asList(
+                candidate("a", 0b01L),
+                candidate("b", 0b11L),
+                candidate("c", 0L));
+
+        assertEquals(Arrays.asList("a", "b", "c"), ids(ranker.rank(candidates, 0L)));
+    }
+
+    @Test
+    public void rank_keepsEveryCandidate() {
+        List<Candidate> candidates = new ArrayList<>();
+        for (int i = 0; i < CandidatePager.DEFAULT_PAGE_SIZE; i++) {
+            candidates.add(candidate("user" + i, i));
+        }
+
+        assertEquals(candidates.size(), ranker.rank(candidates, ~0L).size());
+        assertEquals(Collections.emptyList(), ranker.rank(Collections.emptyList(), ~0L));
+    }
+
+    @Test
+    public void rank_topKFirstThenRestInQueryOrder() {
+        List<Candidate> ranked = new CandidateRanker(2).rank(Arrays.asList(
+                candidate("a", 0b001L),
+                candidate("b", 0b111L),
+                candidate("c", 0b000L),
+                candidate("d", 0b011L),
+                candidate("e", 0b111L)), 0b111L);
+
+        assertEquals(Arrays.asList("b", "e", "a", "c", "d"), ids(ranked));
+    }
+
+    @Test
+    public void rank_rerankingUndealtCardsMovesLaterPagesForward() {
+        List<Candidate> undealt = new ArrayList<>(ranker.rank(Arrays.asList(
+                candidate("young1", 0b001L),
+                candidate("young2", 0b000L)), 0b111L));
+        undealt.add(candidate("old", 0b111L));
+
+        assertEquals(Arrays.asList("old", "young1", "young2"), ids(ranker.rank(undealt, 0b111L)));
+    }
+
+    private static Candidate candidate(String id, long hobbyVector) {
+        return new Candidate(id, "First", "Last", 21, "Female", "Men", "Engineering", null, null, null, hobbyVector);
+    }
+
+    private static List<String> ids(List<Candidate> candidates) {
+        List<String> ids = new ArrayList<>(candidates.size());
+        for (Candidate candidate : candidates) {
+            ids.add(candidate.getId());
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,77 @@
+package com.ensias.essudatingapp;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class HobbyVectorTest {
+
+    private static final String[] HOBBIES = {"Reading", "Sports", "Music", "Movies", "Hiking", "Rock Climbing"};
+
+    private final HobbyVector hobbyVectors = new HobbyVector(HOBBIES);
+
+    @Test
+    public void encode_commaSeparatedList() {
+        assertEquals(bits(2, 4), hobbyVectors.encode("Music, Hiking"));
+    }
+
+    @Test
+    public void encode_ignoresCaseAndSurroundingSpace() {
+        assertEquals(bits(0, 1), hobbyVectors.encode("  reading ,SPORTS  "));
+    }
+
+    @Test
+    public void encode_acceptsSemicolonsAndNewlines() {
+        assertEquals(bits(0, 2, 3), hobbyVectors.encode("Reading;Music\nMovies"));
+    }
+
+    @Test
+    public void encode_findsHobbyWordsInFreeText() {
+        assertEquals(bits(2, 4), hobbyVectors.encode("I love music and hiking on weekends"));
+    }
+
+    @Test
+    public void encode_matchesMultiWordHobbyOnlyAsWholeToken() {
+        assertEquals(bits(5), hobbyVectors.encode("Rock Climbing"));
+        assertEquals(0L, hobbyVectors.encode("rock music climbing") & bits(5));
+    }
+
+    @Test
+    public void encode_ignoresUnknownHobbies() {
+        assertEquals(0L, hobbyVectors.encode("Knitting, Chess"));
+        assertEquals(bits(3), hobbyVectors.encode("Knitting, Movies"));
+    }
+
+    @Test
+    public void encode_nullOrEmptyIsZero() {
+        assertEquals(0L, hobbyVectors.encode(null));
+        assertEquals(0L, hobbyVectors.encode(""));
+    }
+
+    @Test
+    public void constructor_keepsOnlyFirst64Hobbies() {
+        String[] many = new String[HobbyVector.MAX_HOBBIES + 1];
+        for (int i = 0; i < many.length; i++) {
+            many[i] = "Hobby" + (char) ('a' + i / 26) + (char) ('a' + i % 26);
+        }
+        HobbyVector vectors = new HobbyVector(many);
+
+        assertEquals(1L << 63, vectors.encode(many[63]));
+        assertEquals(0L, vectors.encode(many[64]));
+    }
+
+    @Test
+    public void overlap_countsSharedHobbies() {
+        assertEquals(2, HobbyVector.overlap(bits(0, 2, 4), bits(2, 3, 4)));
+        assertEquals(0, HobbyVector.overlap(bits(0), bits(1)));
+        assertEquals(0, HobbyVector.overlap(0L, bits(1, 2)));
+    }
+
+    private static long bits(int... indexes) {
+        long vector = 0L;
+        for (int index : indexes) {
+            vector |= 1L << index;
+        }
+        return vector;
+    }
+}
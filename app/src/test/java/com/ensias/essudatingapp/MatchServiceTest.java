@@ -0,0 +1,24 @@
+package com.ensias.essudatingapp;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class MatchServiceTest {
+
+    @Test
+    public void matchId_sameInEitherOrder() {
+        assertEquals(MatchService.matchId("alice", "bob"), MatchService.matchId("bob", "alice"));
+    }
+
+    @Test
+    public void matchId_joinsSortedIds() {
+        assertEquals("Abc_abc", MatchService.matchId("abc", "Abc"));
+        assertEquals("u1_u2", MatchService.matchId("u2", "u1"));
+    }
+
+    @Test
+    public void matchId_differsPerPair() {
+        assertNotEquals(MatchService.matchId("a", "b"), MatchService.matchId("a", "c"));
+    }
+}
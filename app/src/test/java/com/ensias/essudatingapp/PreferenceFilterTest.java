@@ -0,0 +1,84 @@
+package com.ensias.essudatingapp;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PreferenceFilterTest {
+
+    @Test
+    public void accepts_anyEmptyOrMissingCoursePreferenceAcceptsEveryCourse() {
+        for (String coursePreference : new String[]{"Any", "any", "", "  ", null}) {
+            PreferenceFilter filter = filter("Women", coursePreference);
+
+            assertTrue(filter.accepts(candidate("Female", "Men", "Engineering", 22)));
+            assertTrue(filter.accepts(candidate("Female", "Men", "Law", 22)));
+            assertTrue(filter.accepts(candidate("Female", "Men", null, 22)));
+        }
+    }
+
+    @Test
+    public void accepts_specificCourseOnly() {
+        PreferenceFilter filter = filter("Women", "Engineering");
+
+        assertTrue(filter.accepts(candidate("Female", "Men", "Engineering", 22)));
+        assertTrue(filter.accepts(candidate("Female", "Men", "engineering ", 22)));
+        assertFalse(filter.accepts(candidate("Female", "Men", "Law", 22)));
+        assertFalse(filter.accepts(candidate("Female", "Men", null, 22)));
+    }
+
+    @Test
+    public void accepts_candidateMustMatchGenderPreference() {
+        PreferenceFilter filter = filter("Women", "Any");
+
+        assertTrue(filter.accepts(candidate("Female", "Men", "Law", 22)));
+        assertFalse(filter.accepts(candidate("Male", "Men", "Law", 22)));
+    }
+
+    @Test
+    public void accepts_candidateMustBeInterestedInCurrentUser() {
+        PreferenceFilter filter = filter("Women", "Any");
+
+        assertTrue(filter.accepts(candidate("Female", "Men", "Law", 22)));
+        assertTrue(filter.accepts(candidate("Female", "Everyone", "Law", 22)));
+        assertTrue(filter.accepts(candidate("Female", null, "Law", 22)));
+        assertFalse(filter.accepts(candidate("Female", "Women", "Law", 22)));
+    }
+
+    @Test
+    public void accepts_everyoneStillChecksTheOtherDirection() {
+        PreferenceFilter filter = filter("Everyone", "Any");
+
+        assertTrue(filter.accepts(candidate("Female", "Men", "Law", 22)));
+        assertTrue(filter.accepts(candidate("Male", "Everyone", "Law", 22)));
+        assertFalse(filter.accepts(candidate("Male", "Women", "Law", 22)));
+    }
+
+    @Test
+    public void accepts_ageRangeIsInclusive() {
+        PreferenceFilter filter = filter("Everyone", "Any");
+
+        assertTrue(filter.accepts(candidate("Female", "Men", "Law", 20)));
+        assertTrue(filter.accepts(candidate("Female", "Men", "Law", 25)));
+        assertFalse(filter.accepts(candidate("Female", "Men", "Law", 19)));
+        assertFalse(filter.accepts(candidate("Female", "Men", "Law", 26)));
+    }
+
+    @Test
+    public void codes_internCaseAndSpacing() {
+        assertEquals(ProfileCodes.courseCode("Computer Science"), ProfileCodes.courseCode(" computer science "));
+        assertNotEquals(ProfileCodes.courseCode("Computer Science"), ProfileCodes.courseCode("Law"));
+        assertEquals(ProfileCodes.GENDER_FEMALE, ProfileCodes.genderCode("female"));
+        assertEquals(ProfileCodes.GENDER_MALE, ProfileCodes.genderPreferenceCode("Men"));
+        assertEquals(ProfileCodes.ANY, ProfileCodes.genderPreferenceCode("Everyone"));
+    }
+
+    // A male user aged 20-25 looking for the given gender and course
+    private static PreferenceFilter filter(String genderPreference, String coursePreference) {
+        return new PreferenceFilter(20, 25, genderPreference, coursePreference, ProfileCodes.GENDER_MALE);
+    }
+
+    private static Candidate candidate(String gender, String interestedIn, String course, int age) {
+        return new Candidate("user", "First", "Last", age, gender, interestedIn, course, null, null, null, 0L);
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Builds the discovery and likedBy indexes from the existing users records.
+ *
+ * Clients only ever rewrite their own entry (DiscoveryIndex.migrateIfNeeded), so users who
+ * have not opened the app since the index was introduced would be missing from every deck.
+ * This runs once with admin privileges and writes the entries for everyone:
+ *
+ *   discovery/{gender}/{course}/{uid}   card fields, under the own and "Any" buckets
+ *   discoveryMeta/{uid}/version         the layout the entry was written with
+ *   likedBy/{target}/{liker}            one entry per stored like
+ *   indexMeta/backfillVersion           set last, once every user has been written
+ *
+ * The layout must match DiscoveryIndex.VERSION, key(), bucketPaths() and entry(). Users
+ * whose entry is already at that version rewrote it themselves and are skipped, so a
+ * rerun or a run next to live clients never replaces newer data. likedBy entries are
+ * written per path and never remove anything.
+ *
+ * Usage:
+ *   npm install
+ *   GOOGLE_APPLICATION_CREDENTIALS=service-account.json \
+ *     DATABASE_URL=https://<project>-default-rtdb.firebaseio.com npm run backfill
+ */
+
+const admin = require("firebase-admin");
+
+// Keep in step with DiscoveryIndex.VERSION
+const VERSION = 5;
+const ANY = "Any";
+const PAGE_SIZE = 500;
+
+admin.initializeApp({
+  credential: admin.credential.applicationDefault(),
+  databaseURL: process.env.DATABASE_URL,
+});
+const root = admin.database().ref();
+
+// DiscoveryIndex.key(): Firebase keys may not contain . $ # [ ] /
+function key(value) {
+  if (value == null || String(value).trim() === "") {
+    return "Unknown";
+  }
+  return String(value).trim().replace(/[.$#\[\]\/]/g, "_");
+}
+
+function bucketPaths(gender, course) {
+  const genderKey = key(gender);
+  const courseKey = key(course);
+  return [...new Set([
+    `discovery/${genderKey}/${courseKey}`,
+    `discovery/${genderKey}/${ANY}`,
+    `discovery/${ANY}/${courseKey}`,
+    `discovery/${ANY}/${ANY}`,
+  ])];
+}
+
+// DiscoveryIndex.entry(); missing fields are written as the Java defaults
+function entry(user) {
+  const profile = user.profile || {};
+  return {
+    firstName: user.firstName ?? null,
+    lastName: user.lastName ?? null,
+    age: user.age ?? 0,
+    gender: user.gender ?? null,
+    interestedIn: user.interestedIn ?? null,
+    course: user.course ?? null,
+    profileImage: user.profileImage ?? null,
+    bio: profile.bio ?? null,
+    hobbies: profile.hobbies ?? null,
+    createdAt: user.createdAt ?? 0,
+  };
+}
+
+async function putUser(updates, uid, user) {
+  const version = (await root.child(`discoveryMeta/${uid}/version`).get()).val();
+  if (version == null || version < VERSION) {
+    const card = entry(user);
+    for (const path of bucketPaths(user.gender, user.course)) {
+      updates[`${path}/${uid}`] = card;
+    }
+    updates[`discoveryMeta/${uid}/version`] = VERSION;
+  }
+
+  for (const [targetId, interaction] of Object.entries(user.interactions || {})) {
+    if (interaction && interaction.type === "like") {
+      updates[`likedBy/${targetId}/${uid}`] = interaction.timestamp ?? 0;
+    }
+  }
+}
+
+async function main() {
+  let lastKey = null;
+  let users = 0;
+
+  // One page of users per multi-path update, so memory stays bounded on a large campus
+  for (;;) {
+    let query = root.child("users").orderByKey().limitToFirst(PAGE_SIZE + (lastKey ? 1 : 0));
+    if (lastKey) {
+      query = query.startAt(lastKey);
+    }
+    const page = await query.get();
+
+    // forEach keeps key order, which the cursor relies on
+    const children = [];
+    page.forEach((child) => {
+      if (child.key !== lastKey) children.push(child);
+    });
+    if (children.length === 0) break;
+
+    const updates = {};
+    await Promise.all(children.map((child) => putUser(updates, child.key, child.val() || {})));
+    lastKey = children[children.length - 1].key;
+
+    await root.update(updates);
+    users += children.length;
+    console.log(`backfilled ${users} users`);
+  }
+
+  // Clients stop falling back to interaction reads for mutual likes once this is set
+  await root.child("indexMeta/backfillVersion").set(VERSION);
+  console.log(`done, ${users} users`);
+}
+
+main()
+  .then(() => process.exit(0))
+  .catch((error) => {
+    console.error(error);
+    process.exit(1);
+  });